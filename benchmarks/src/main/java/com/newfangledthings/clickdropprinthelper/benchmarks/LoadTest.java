@@ -0,0 +1,166 @@
+package com.newfangledthings.clickdropprinthelper.benchmarks;
+
+import com.newfangledthings.clickdropprinthelper.Config;
+import com.newfangledthings.clickdropprinthelper.FileWatcher;
+import com.newfangledthings.clickdropprinthelper.ProcessingMetrics;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Drops made up order pdfs into a temporary watch folder at a steady rate and measures how long
+ * each one takes to go through the {@link FileWatcher}, from appearing in the folder to every pdf
+ * being created for it.
+ * <p>
+ * Each file is written as a partial download first and then renamed, the same as a browser does.
+ * Run with {@code java -Djava.awt.headless=true -cp target/benchmarks.jar
+ * com.newfangledthings.clickdropprinthelper.benchmarks.LoadTest [files] [labels] [files per minute] [threads]}
+ */
+public class LoadTest {
+    private static final long TIMEOUT_MINUTES = 30;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int labels = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int filesPerMinute = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        System.setProperty("java.awt.headless", "true");
+
+        Path workFolder = Files.createTempDirectory("clickdrop-loadtest");
+        try {
+            run(workFolder, files, labels, filesPerMinute, threads);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workFolder)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        // The watcher has no way to stop, so end it here
+        System.exit(0);
+    }
+
+    private static void run(Path workFolder, int files, int labels, int filesPerMinute, int threads) throws Exception {
+        Path watchFolder = Files.createDirectories(workFolder.resolve("watch"));
+        Path storeFolder = Files.createDirectories(workFolder.resolve("store"));
+        Path order = workFolder.resolve("order.pdf");
+        // Every other label has a 128 wide QR code and the packing slips are between the labels, so all the layouts are covered
+        OrderPdfGenerator.generate(labels, 2, true, order.toFile());
+        Config config = new Config(writeConfig(workFolder, watchFolder, storeFolder, threads).toString());
+
+        System.out.println("Dropping " + files + " orders of " + labels + " labels at " + filesPerMinute
+                + " a minute with " + threads + " worker(s)");
+
+        Map<String, Long> dropped = new ConcurrentHashMap<>();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(files);
+        FileWatcher fileWatcher = new FileWatcher(config, true);
+        fileWatcher.setFileProcessedListener(filename -> {
+            Long start = dropped.remove(filename);
+            if (start != null) {
+                latencies.add(System.nanoTime() - start);
+                finished.countDown();
+            }
+        });
+
+        // Keep the per file log lines out of the results
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Thread watcher = new Thread(() -> {
+            try {
+                fileWatcher.watch();
+            } catch (IOException | InterruptedException e) {
+                System.err.println("Error watching folder: " + e.getMessage());
+                e.printStackTrace(System.err);
+            }
+        }, "load-test-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        // Give the watch service time to register before the first file is dropped
+        Thread.sleep(1000);
+
+        long interval = TimeUnit.MINUTES.toNanos(1) / Math.max(1, filesPerMinute);
+        long started = System.nanoTime();
+        for (int file = 0; file < files; file++) {
+            long due = started + file * interval;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            String filename = "order-" + file + ".pdf";
+            Path partial = watchFolder.resolve(filename + ".crdownload");
+            Files.copy(order, partial);
+            dropped.put(filename, System.nanoTime());
+            Files.move(partial, watchFolder.resolve(filename), StandardCopyOption.ATOMIC_MOVE);
+        }
+        boolean completed = finished.await(TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - started;
+        System.setOut(originalOut);
+
+        if (!completed) {
+            System.out.println("Timed out with " + finished.getCount() + " file(s) still to process");
+        }
+        report(new ArrayList<>(latencies), elapsed);
+        System.out.println("Metrics: " + ProcessingMetrics.get().getSummary());
+    }
+
+    private static Path writeConfig(Path workFolder, Path watchFolder, Path storeFolder, int threads) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("WatchFolder", watchFolder.toString());
+        properties.setProperty("StoreFolder", storeFolder.toString());
+        properties.setProperty("CreatePackingSlips", "yes");
+        properties.setProperty("CreateLabels", "yes");
+        properties.setProperty("CreateProofOfPostage", "yes");
+        properties.setProperty("CreateQRs", "yes");
+        properties.setProperty("PackingSlipHeaderImage", "");
+        properties.setProperty("PackingSlipFooterImage", "");
+        properties.setProperty("ViewerDelay", "0");
+        properties.setProperty("BeforeRun", "");
+        properties.setProperty("ProcessingThreads", String.valueOf(threads));
+        // Every file is the same order, so it would only be processed once if duplicates were skipped
+        properties.setProperty("SkipDuplicates", "no");
+        for (String viewer : new String[]{"ViewerExecutePackingSlip", "ViewerExecuteLabels", "ViewerExecuteProofOfPostage",
+                "ViewerExecutePrintProofOfPostage", "ViewerExecutePrintLabels", "ViewerExecutePrintPackingSlip"}) {
+            properties.setProperty(viewer, "");
+        }
+        Path configFile = workFolder.resolve("config.properties");
+        try (OutputStream output = new FileOutputStream(configFile.toFile())) {
+            properties.store(output, "Load test settings");
+        }
+        return configFile;
+    }
+
+    private static void report(List<Long> latencies, long elapsedNanos) {
+        if (latencies.isEmpty()) {
+            System.out.println("No files were processed");
+            return;
+        }
+        Collections.sort(latencies);
+        double minutes = elapsedNanos / (double) TimeUnit.MINUTES.toNanos(1);
+        System.out.printf("Processed %d file(s) in %.1fs, %.1f files/min%n",
+                latencies.size(), elapsedNanos / 1e9, latencies.size() / minutes);
+        System.out.printf("Latency p50 %dms, p99 %dms, max %dms%n",
+                percentile(latencies, 50), percentile(latencies, 99), TimeUnit.NANOSECONDS.toMillis(latencies.get(latencies.size() - 1)));
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+    }
+}
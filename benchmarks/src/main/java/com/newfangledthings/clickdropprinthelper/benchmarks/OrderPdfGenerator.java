@@ -0,0 +1,190 @@
+package com.newfangledthings.clickdropprinthelper.benchmarks;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates made up Click & Drop order pdfs, so the processing can be measured without real customer data.
+ * <p>
+ * Labels are 4 to an A4 page, each with the text the proof of postage parser looks for and either a
+ * 1050 wide label image holding the QR code or a separate 128 wide QR code image. There is one packing
+ * slip per order, either all after the labels or after each page of labels.
+ * <p>
+ * Run on its own with {@code java -cp target/benchmarks.jar
+ * com.newfangledthings.clickdropprinthelper.benchmarks.OrderPdfGenerator <labels> <file> [small QR every] [interleave]}
+ */
+public class OrderPdfGenerator {
+    private static final int LABELS_PER_PAGE = 4;
+
+    private OrderPdfGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: OrderPdfGenerator <labels> <file> [small QR every] [interleave]");
+            System.exit(1);
+        }
+        int labels = Integer.parseInt(args[0]);
+        File file = new File(args[1]);
+        int smallQRCodeEvery = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        boolean interleavePackingSlips = args.length > 3 && Boolean.parseBoolean(args[3]);
+        generate(labels, smallQRCodeEvery, interleavePackingSlips, file);
+        System.out.println("Created " + file + " with " + labels + " labels");
+    }
+
+    /**
+     * @param labels is the number of labels (and packing slips) to create
+     * @param file   is where to save the pdf
+     */
+    public static void generate(int labels, File file) throws IOException {
+        generate(labels, 0, false, file);
+    }
+
+    /**
+     * @param labels                 is the number of labels (and packing slips) to create
+     * @param smallQRCodeEvery       gives every nth label a 128 wide QR code image instead of a 1050 wide label image, 0 for none
+     * @param interleavePackingSlips puts the packing slips after each page of labels rather than all at the end
+     * @param file                   is where to save the pdf
+     */
+    public static void generate(int labels, int smallQRCodeEvery, boolean interleavePackingSlips, File file) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int label = 0; label < labels; label += LABELS_PER_PAGE) {
+                int count = Math.min(LABELS_PER_PAGE, labels - label);
+                addLabelPage(document, label, count, smallQRCodeEvery);
+                if (interleavePackingSlips) {
+                    for (int slip = label; slip < label + count; slip++) {
+                        addPackingSlipPage(document, slip);
+                    }
+                }
+            }
+            if (!interleavePackingSlips) {
+                for (int label = 0; label < labels; label++) {
+                    addPackingSlipPage(document, label);
+                }
+            }
+            document.save(file);
+        }
+    }
+
+    private static void addLabelPage(PDDocument document, int firstLabel, int count, int smallQRCodeEvery) throws IOException {
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        try (PDPageContentStream contents = new PDPageContentStream(document, page)) {
+            for (int quadrant = 0; quadrant < count; quadrant++) {
+                int label = firstLabel + quadrant;
+                float x = (quadrant % 2) * 297 + 20;
+                float y = 800 - (quadrant / 2) * 420;
+                if (smallQRCodeEvery > 0 && label % smallQRCodeEvery == 0) {
+                    // The label image has to be a width that is not taken for a QR code
+                    PDImageXObject image = LosslessFactory.createFromImage(document, createLabelImage(label, 1000, false));
+                    contents.drawImage(image, x, y - 380, 250, 190);
+                    PDImageXObject qrCode = LosslessFactory.createFromImage(document, createQRCodeImage(label));
+                    contents.drawImage(qrCode, x + 180, y - 180, 60, 60);
+                } else {
+                    PDImageXObject image = LosslessFactory.createFromImage(document, createLabelImage(label, 1050, true));
+                    contents.drawImage(image, x, y - 380, 250, 190);
+                }
+                writeLines(contents, x, y, 9, labelLines(label));
+            }
+        }
+    }
+
+    private static void addPackingSlipPage(PDDocument document, int label) throws IOException {
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        try (PDPageContentStream contents = new PDPageContentStream(document, page)) {
+            // The heading on the second line is what marks the page as a packing slip, it is in a
+            // different case to the labels so the proof of postage parser does not count it as one
+            writeLines(contents, 50, 780, 12, new String[]{
+                    "Order " + (10000 + label),
+                    "Shipping address",
+                    "Customer " + label,
+                    label + " High Street",
+                    "1 x Widget"
+            });
+        }
+    }
+
+    /**
+     * The text of a label, in the order the proof of postage parser reads it
+     */
+    static String[] labelLines(int label) {
+        return new String[]{
+                "Royal Mail",
+                "Click & Drop",
+                "Shipping Address",
+                "Customer " + label,
+                label + " High Street",
+                "Town",
+                "AB" + (label % 100) + " 1CD",
+                "Tracked 48 No Signature",
+                "RM",
+                "Postage Paid GB",
+                "Tracking",
+                "Reference",
+                String.format("AB %04d %04d %dGB", label / 10000, label % 10000, label % 10)
+        };
+    }
+
+    private static void writeLines(PDPageContentStream contents, float x, float y, float fontSize, String[] lines) throws IOException {
+        contents.beginText();
+        contents.setFont(PDType1Font.HELVETICA, fontSize);
+        contents.setLeading(fontSize + 2);
+        contents.newLineAtOffset(x, y);
+        for (String line : lines) {
+            contents.showText(line);
+            contents.newLine();
+        }
+        contents.endText();
+    }
+
+    /**
+     * A label image, with a block standing in for the QR code where the real 1050 wide labels have it
+     */
+    private static BufferedImage createLabelImage(int label, int width, boolean includeQRCode) {
+        BufferedImage image = new BufferedImage(width, 800, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setColor(Color.BLACK);
+        if (includeQRCode) {
+            drawQRCode(graphics, label, 80, 460, 32);
+        }
+        graphics.drawString("Label " + label, 500, 200);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * A 128 wide image standing in for the QR code on labels that have it as a separate image
+     */
+    private static BufferedImage createQRCodeImage(int label) {
+        BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setColor(Color.BLACK);
+        drawQRCode(graphics, label, 0, 0, 16);
+        graphics.dispose();
+        return image;
+    }
+
+    private static void drawQRCode(Graphics2D graphics, int label, int x, int y, int cell) {
+        for (int bit = 0; bit < 64; bit++) {
+            if (((label * 31L + bit * 17L) & 4) != 0) {
+                graphics.fillRect(x + (bit % 8) * cell, y + (bit / 8) * cell, cell, cell);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.newfangledthings.clickdropprinthelper.benchmarks;
+
+import com.newfangledthings.clickdropprinthelper.Config;
+import com.newfangledthings.clickdropprinthelper.MemorySettings;
+import com.newfangledthings.clickdropprinthelper.OrderDocument;
+import com.newfangledthings.clickdropprinthelper.ProofOfPostage;
+import com.newfangledthings.clickdropprinthelper.ProofOfPostageCreator;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures each stage of processing a Click & Drop order on its own.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar}, which adds the gc profiler so the
+ * allocation rate is reported next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ProcessingBenchmark {
+
+    @Param({"4", "30", "120", "1000"})
+    public int labels;
+
+    private Path workFolder;
+    private Path storeFolder;
+    private File orderFile;
+    private MemoryUsageSetting memoryUsageSetting;
+    private ProofOfPostageCreator proofOfPostageCreator;
+    private OrderDocument orderDocument;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workFolder = Files.createTempDirectory("clickdrop-benchmark");
+        storeFolder = Files.createDirectories(workFolder.resolve("store"));
+        orderFile = workFolder.resolve("order-" + labels + ".pdf").toFile();
+        OrderPdfGenerator.generate(labels, orderFile);
+
+        Config config = new Config(writeConfig().toString());
+        memoryUsageSetting = MemorySettings.create(config.getSettings());
+        proofOfPostageCreator = new ProofOfPostageCreator(config);
+        orderDocument = OrderDocument.load(orderFile, memoryUsageSetting);
+
+        // Keep the per label log lines out of the results
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private Path writeConfig() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("WatchFolder", workFolder.toString());
+        properties.setProperty("StoreFolder", storeFolder.toString());
+        properties.setProperty("PackingSlipHeaderImage", "");
+        properties.setProperty("PackingSlipFooterImage", "");
+        Path configFile = workFolder.resolve("config.properties");
+        try (OutputStream output = new FileOutputStream(configFile.toFile())) {
+            properties.store(output, "Benchmark settings");
+        }
+        return configFile;
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearOutputs() throws IOException {
+        try (Stream<Path> files = Files.list(storeFolder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        proofOfPostageCreator.close();
+        orderDocument.close();
+        try (Stream<Path> files = Files.walk(workFolder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * Loading the order, which is also where the text of each page is extracted and classified
+     */
+    @Benchmark
+    public int loadOrder() throws IOException {
+        try (OrderDocument order = OrderDocument.load(orderFile, memoryUsageSetting)) {
+            return order.getNumberOfPages();
+        }
+    }
+
+    @Benchmark
+    public int createProofOfPostage() throws IOException {
+        ProofOfPostage[] proofOfPostages = proofOfPostageCreator.createProofOfPostage(orderDocument);
+        for (ProofOfPostage proofOfPostage : proofOfPostages) {
+            proofOfPostage.close();
+        }
+        return proofOfPostages.length;
+    }
+
+    @Benchmark
+    public List<Integer> findPackingSlips() {
+        return proofOfPostageCreator.findPackingSlips(true, orderDocument);
+    }
+
+    @Benchmark
+    public void createPackingSlips() throws IOException {
+        proofOfPostageCreator.createPackingSlips(orderDocument, "packing-" + labels + ".pdf");
+    }
+
+    @Benchmark
+    public void createLabels() throws IOException {
+        proofOfPostageCreator.createLabels(orderDocument, "labels-" + labels + ".pdf");
+    }
+}
@@ -0,0 +1,110 @@
+package com.newfangledthings.clickdropprinthelper.benchmarks;
+
+import com.newfangledthings.clickdropprinthelper.Config;
+import com.newfangledthings.clickdropprinthelper.MemorySettings;
+import com.newfangledthings.clickdropprinthelper.OrderDocument;
+import com.newfangledthings.clickdropprinthelper.ProofOfPostage;
+import com.newfangledthings.clickdropprinthelper.ProofOfPostageCreator;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures adding the QR code pages to the proofs of postage for an order.
+ * <p>
+ * The cropped QR codes are cached on the order, so every invocation loads the order again
+ * and the cropping is measured each time rather than only on the first call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class QRCodeBenchmark {
+
+    @Param({"4", "30", "120", "1000"})
+    public int labels;
+
+    private Path workFolder;
+    private File orderFile;
+    private MemoryUsageSetting memoryUsageSetting;
+    private ProofOfPostageCreator proofOfPostageCreator;
+    private OrderDocument orderDocument;
+    private ProofOfPostage[] proofOfPostages;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workFolder = Files.createTempDirectory("clickdrop-benchmark");
+        orderFile = workFolder.resolve("order-" + labels + ".pdf").toFile();
+        OrderPdfGenerator.generate(labels, orderFile);
+
+        Properties properties = new Properties();
+        properties.setProperty("WatchFolder", workFolder.toString());
+        properties.setProperty("StoreFolder", workFolder.toString());
+        Path configFile = workFolder.resolve("config.properties");
+        try (OutputStream output = new FileOutputStream(configFile.toFile())) {
+            properties.store(output, "Benchmark settings");
+        }
+        Config config = new Config(configFile.toString());
+        memoryUsageSetting = MemorySettings.create(config.getSettings());
+        proofOfPostageCreator = new ProofOfPostageCreator(config);
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Setup(Level.Invocation)
+    public void loadOrder() throws IOException {
+        orderDocument = OrderDocument.load(orderFile, memoryUsageSetting);
+        proofOfPostages = proofOfPostageCreator.createProofOfPostage(orderDocument);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeOrder() throws IOException {
+        for (ProofOfPostage proofOfPostage : proofOfPostages) {
+            proofOfPostage.close();
+        }
+        orderDocument.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        proofOfPostageCreator.close();
+        try (Stream<Path> files = Files.walk(workFolder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void addQRCodesToProofOfPostage() {
+        for (ProofOfPostage proofOfPostage : proofOfPostages) {
+            proofOfPostageCreator.addQRCodesToProofOfPostage(proofOfPostage);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+// BatchApp.java
+package com.newfangledthings.clickdropprinthelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes order pdfs that have already been downloaded, for example to clear a backlog after an outage.
+ * It runs without a display, never prompts or opens a viewer, and exits once every file has been done.
+ * <p>
+ * Exit status is 0 when every file was processed, 1 for bad arguments or no files found,
+ * 2 when any file failed and 3 when any file was not a Click & Drop order.
+ */
+public class BatchApp {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_USAGE = 1;
+    private static final int EXIT_FAILED = 2;
+    private static final int EXIT_NOT_RECOGNISED = 3;
+
+    private enum Outcome {
+        PROCESSED, NOT_RECOGNISED, FAILED
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        String configName = "config.properties";
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--config") && i + 1 < args.length) {
+                configName = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Number of threads must be a number: " + args[i]);
+                    System.exit(EXIT_USAGE);
+                }
+            } else {
+                inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: BatchApp [--config config.properties] [--threads n] <folder or glob>...");
+            System.exit(EXIT_USAGE);
+        }
+        // Config would create a default file and exit successfully, which is no use here
+        if (!new File(configName).exists()) {
+            System.err.println("Config file " + configName + " not found");
+            System.exit(EXIT_USAGE);
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            try {
+                files.addAll(findOrders(input));
+            } catch (IOException e) {
+                System.err.println("Unable to read " + input + ": " + e.getMessage());
+                System.exit(EXIT_USAGE);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("No order pdfs found in " + String.join(", ", inputs));
+            System.exit(EXIT_USAGE);
+        }
+
+        System.exit(run(new Config(configName), files, threads));
+    }
+
+    /**
+     * @param input is a folder, in which case the order*.pdf files in it are used, or a glob such as downloads/order-2024*.pdf
+     * @return the matching files in name order
+     */
+    static List<Path> findOrders(String input) throws IOException {
+        Path path = Paths.get(input);
+        Path folder;
+        PathMatcher matcher;
+        if (Files.isDirectory(path)) {
+            folder = path;
+            matcher = path.getFileSystem().getPathMatcher("glob:order*.pdf");
+        } else {
+            folder = path.toAbsolutePath().getParent();
+            matcher = path.getFileSystem().getPathMatcher("glob:" + path.getFileName());
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static int run(Config config, List<Path> files, int threads) throws InterruptedException {
+        OrderProcessor orderProcessor = new OrderProcessor(config);
+        System.out.println("Properties loaded from " + config.getConfigName());
+        orderProcessor.printSettings();
+        System.out.println("Processing " + files.size() + " file(s) with " + threads + " worker(s)");
+
+        long started = System.nanoTime();
+        ExecutorService workers = WorkerPool.create(threads);
+        List<Future<Outcome>> outcomes = new ArrayList<>();
+        for (Path file : files) {
+            outcomes.add(workers.submit(() -> process(orderProcessor, file)));
+        }
+        int processed = 0;
+        int notRecognised = 0;
+        int failed = 0;
+        for (Future<Outcome> outcome : outcomes) {
+            try {
+                switch (outcome.get()) {
+                    case PROCESSED:
+                        processed++;
+                        break;
+                    case NOT_RECOGNISED:
+                        notRecognised++;
+                        break;
+                    default:
+                        failed++;
+                }
+            } catch (ExecutionException e) {
+                failed++;
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        try {
+            orderProcessor.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the ledger or parcel index: " + e.getMessage());
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.println(String.format("Processed %d of %d file(s) in %.1fs, %d not recognised, %d failed",
+                processed, files.size(), seconds, notRecognised, failed));
+        System.out.println("Metrics: " + ProcessingMetrics.get().getSummary());
+        if (failed > 0) {
+            return EXIT_FAILED;
+        }
+        return notRecognised > 0 ? EXIT_NOT_RECOGNISED : EXIT_OK;
+    }
+
+    private static Outcome process(OrderProcessor orderProcessor, Path file) {
+        try {
+            return orderProcessor.process(file.toFile(), (filename, outputType) -> { }) ? Outcome.PROCESSED : Outcome.NOT_RECOGNISED;
+        } catch (Exception e) {
+            ProcessingMetrics.get().error();
+            System.err.println("Error processing " + file.getFileName() + ": " + e.getMessage());
+            e.printStackTrace(System.err);
+            return Outcome.FAILED;
+        }
+    }
+}
@@ -1,20 +1,51 @@
 package com.newfangledthings.clickdropprinthelper;
 
 import javax.swing.filechooser.FileSystemView;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+/**
+ * The config file and the settings parsed from it.
+ * <p>
+ * The settings are parsed once into an immutable {@link Settings} for each profile. Once the file is being
+ * watched, saving it swaps in new Settings for every profile at once, so the next order file uses the new
+ * settings without restarting the app and losing the time PDFBox has spent warming up.
+ */
 public class Config {
-    private final Properties properties;
+    // Editors can write the file in more than one go, so wait for it to settle before reading it
+    private static final long RELOAD_DELAY_MILLIS = 500;
+
+    private Properties properties;
     private final File configFile;
+    // Each profile's settings by name, replaced as a whole so the profiles are always from the same file
+    private volatile Map<String, Settings> profiles;
+    private volatile Runnable reloadListener;
 
     public Config(String configFilePath) {
         properties = new Properties();
         configFile = new File(configFilePath);
         loadProperties();
+        try {
+            profiles = Settings.parse(properties, configFile.getName());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            throw e;
+        }
     }
 
     /**
@@ -47,6 +78,7 @@ public class Config {
 
             properties.setProperty("CreatePackingSlips", "yes");
             properties.setProperty("CreateLabels", "yes");
+            properties.setProperty("LabelLayout", "original");
             properties.setProperty("CreateProofOfPostage", "yes");
             properties.setProperty("CreateQRs", "yes");
 
@@ -57,11 +89,28 @@ public class Config {
             properties.setProperty("StoreFolder", FileSystemView.getFileSystemView().getDefaultDirectory().getAbsolutePath()); //System.getProperty("user.dir"));
 
             properties.setProperty("ViewerDelay", "1");
+            properties.setProperty("ViewerThreads", "2");
+            properties.setProperty("ViewerTimeout", "0");
             properties.setProperty("BeforeRun","prompt"); //settings are stop, prompt, unset will monitor as normal and run
+            properties.setProperty("ProcessingThreads", "2");
+            properties.setProperty("Profiles", "");
+            properties.setProperty("BatchWindow", "0");
+            properties.setProperty("SkipDuplicates", "yes");
+            properties.setProperty("LedgerFile", "");
+            properties.setProperty("ParcelIndexFile", "");
+            properties.setProperty("FileReadyCheckInterval", "200");
+            properties.setProperty("FileReadyStableTime", "500");
+            properties.setProperty("MaxMainMemoryMB", "");
+            properties.setProperty("MetricsSummaryInterval", "300");
+            properties.setProperty("LogFile", "");
+            properties.setProperty("LogFileMaxSizeKB", "1024");
 
             properties.setProperty("ViewerExecutePrintProofOfPostage","");
             properties.setProperty("ViewerExecutePrintLabels","");
             properties.setProperty("ViewerExecutePrintPackingSlip","");
+            properties.setProperty("PrinterProofOfPostage","");
+            properties.setProperty("PrinterLabels","");
+            properties.setProperty("PrinterPackingSlip","");
 
             properties.store(output, "Default Configuration Settings");
             System.out.println("Default settings saved to config.properties");
@@ -71,22 +120,142 @@ public class Config {
         }
     }
 
-    // Get a property from the config file
-    // Will cause and exception and return and error message if property does not exist
-    public String getProperty(String key) {
-        if (!properties.containsKey(key)) {
-            var error = "Property '" + key + "' not found in " + configFile.getName() + " file";
-            System.err.println(error);
-            throw new IllegalArgumentException(error);
-        }
-        return properties.getProperty(key);
+    /**
+     * @return the settings of the main profile in use now, which stay the same for as long as the caller holds them
+     */
+    public Settings getSettings() {
+        return profiles.get(Settings.MAIN_PROFILE);
+    }
+
+    /**
+     * @param profile is the name of the profile, empty for the main profile
+     * @return the settings of the profile in use now, or null if it has been taken out of the config
+     */
+    public Settings getSettings(String profile) {
+        return profiles.get(profile);
+    }
+
+    /**
+     * @return the settings of every profile in use now, the main profile first
+     */
+    public Collection<Settings> getProfiles() {
+        return profiles.values();
     }
 
     public String getConfigName(){
         return configFile.getName();
     }
 
-    public Properties getProperties() {
-        return properties;
+    /**
+     * @return a copy of the properties in the config file, for editing
+     */
+    public synchronized Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    /**
+     * @param reloadListener is called each time the settings are reloaded
+     */
+    public void setReloadListener(Runnable reloadListener) {
+        this.reloadListener = reloadListener;
+    }
+
+    /**
+     * Check the properties, write them to the config file and use them from the next order file
+     *
+     * @param edited is the edited properties
+     * @throws IllegalArgumentException if any setting cannot be used, in which case nothing is saved
+     */
+    public synchronized void save(Properties edited) throws IOException {
+        Map<String, Settings> saved = Settings.parse(edited, configFile.getName());
+        try (FileOutputStream output = new FileOutputStream(configFile)) {
+            edited.store(output, null);
+        }
+        swap(edited, saved);
+    }
+
+    /**
+     * Read the config file again, and use it from the next order file if it has changed. If any setting
+     * cannot be used the settings already in use are kept
+     *
+     * @return true if new settings were swapped in
+     */
+    public synchronized boolean reload() {
+        Properties loaded = new Properties();
+        try (FileInputStream input = new FileInputStream(configFile)) {
+            loaded.load(input);
+        } catch (IOException e) {
+            System.err.println("Error reloading properties: " + e.getMessage());
+            return false;
+        }
+        if (loaded.equals(properties)) {
+            return false;
+        }
+        try {
+            swap(loaded, Settings.parse(loaded, configFile.getName()));
+            return true;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", carrying on with the previous settings");
+            return false;
+        }
+    }
+
+    private void swap(Properties newProperties, Map<String, Settings> newProfiles) {
+        Map<String, Settings> previous = profiles;
+        properties = newProperties;
+        profiles = newProfiles;
+        System.out.println("Properties reloaded from " + configFile.getName() + ", they will be used from the next order file");
+        List<String> restartChanges = new ArrayList<>();
+        if (!previous.keySet().equals(newProfiles.keySet())) {
+            // Each profile's folder is only watched from when the app starts
+            restartChanges.add("Profiles");
+        }
+        for (Settings settings : newProfiles.values()) {
+            Settings previousSettings = previous.get(settings.getProfile());
+            if (previousSettings != null) {
+                restartChanges.addAll(settings.getRestartChanges(previousSettings));
+            }
+        }
+        if (!restartChanges.isEmpty()) {
+            System.out.println("Restart to use the changes to " + String.join(", ", restartChanges));
+        }
+        Runnable listener = reloadListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Reload the config file each time it is saved, until the returned watcher is closed
+     *
+     * @return the watcher, to close when the app stops
+     */
+    public Closeable watch() throws IOException {
+        Path file = configFile.getAbsoluteFile().toPath();
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        WorkerPool.createThreadFactory("config").newThread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= file.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    if (changed) {
+                        Thread.sleep(RELOAD_DELAY_MILLIS);
+                        reload();
+                    }
+                }
+            } catch (ClosedWatchServiceException e) {
+                // Stopped watching
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).start();
+        return watchService;
     }
-}
\ No newline at end of file
+}
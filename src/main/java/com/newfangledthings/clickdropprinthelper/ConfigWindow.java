@@ -6,7 +6,6 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashMap;
@@ -15,12 +14,14 @@ import java.util.Map;
 import java.util.Properties;
 
 public class ConfigWindow extends JFrame {
-    private final Properties config;
+    private final Config config;
+    private final Properties properties;
     private final JPanel configPanel;
     private final Map<String, String> friendlyTextLookup;
 
-    public ConfigWindow(Properties config) {
+    public ConfigWindow(Config config) {
         this.config = config;
+        this.properties = config.getProperties();
         this.friendlyTextLookup = createFriendlyTextLookup();
 
         setTitle("Configuration");
@@ -65,11 +66,15 @@ public class ConfigWindow extends JFrame {
         lookup.put("ViewerExecutePrintProofOfPostage", "Proof Of Postage printable executable path (\\path\\pdf\\viewer.exe /t)");
         lookup.put("ViewerExecutePrintPackingSlip", "Packing Slip printable executable path (\\path\\pdf\\viewer.exe /t)");
         lookup.put("ViewerExecutePrintLabels", "Labels printable executable path (\\path\\pdf\\viewer.exe /t)");
+        lookup.put("PrinterProofOfPostage", "Proof Of Postage printer, printed without a viewer (blank to use the executable)");
+        lookup.put("PrinterPackingSlip", "Packing Slip printer, printed without a viewer (blank to use the executable)");
+        lookup.put("PrinterLabels", "Labels printer, printed without a viewer (blank to use the executable)");
 
         lookup.put("HEADER_CREATION", "Document Creation");
         lookup.put("CreatePackingSlips", "Create Packing Slips? (yes/no)");
         lookup.put("CreateProofOfPostage", "Create Proof Of Postage (yes/no)");
         lookup.put("CreateLabels", "Create Labels (yes/no)");
+        lookup.put("LabelLayout", "Labels layout (original, 6x4, 2-up, 4-up)");
         lookup.put("CreateQRs", "Add QRs to Packing Slips (yes/no)");
 
         lookup.put("HEADER_IMAGES", "Packing Slip Images");
@@ -79,10 +84,24 @@ public class ConfigWindow extends JFrame {
         lookup.put("HEADER_FOLDERS", "Folders Configuration");
         lookup.put("WatchFolder", "Watch Folder (\\folder\\where\\clickdrop\\downloads\\pdfs\\)");
         lookup.put("StoreFolder", "Store Folder (\\folder\\to\\store\\created\\pdfs\\)");
+        lookup.put("Profiles", "Other folders to watch, as names separated by commas, each with its own name.WatchFolder and name.StoreFolder");
 
         lookup.put("HEADER_MISC", "Other Settings");
         lookup.put("ViewerDelay", "Viewer Delay (seconds)");
+        lookup.put("ViewerThreads", "Number of viewers or prints that can be started at the same time");
+        lookup.put("ViewerTimeout", "Time a print can take before it is stopped (seconds, 0 to never stop it)");
         lookup.put("BeforeRun", "PDF found action (stop, prompt, unset will monitor as normal and run)");
+        lookup.put("ProcessingThreads", "Number of order files to process at the same time");
+        lookup.put("SkipDuplicates", "Skip order files that have already been processed (yes/no)");
+        lookup.put("LedgerFile", "Record of processed order files (blank for processed-orders.log in the Store Folder)");
+        lookup.put("ParcelIndexFile", "Index to find parcels by tracking number, name or postcode (blank for parcels.log in the Store Folder)");
+        lookup.put("BatchWindow", "Combine order files arriving within this many seconds into one set (0 for off)");
+        lookup.put("FileReadyCheckInterval", "How often to check if a download has finished (milliseconds)");
+        lookup.put("FileReadyStableTime", "Time a download must be unchanged before it is processed (milliseconds)");
+        lookup.put("MaxMainMemoryMB", "Memory each pdf can use before using a scratch file (MB, blank for no limit)");
+        lookup.put("MetricsSummaryInterval", "Seconds between metrics summaries (0 for none)");
+        lookup.put("LogFile", "Log file for the console output (blank for none)");
+        lookup.put("LogFileMaxSizeKB", "Size the log file can reach before it is rolled over (KB)");
 
         return lookup;
     }
@@ -102,7 +121,7 @@ public class ConfigWindow extends JFrame {
             } else {
                 JLabel label = new JLabel(friendlyText);
                 label.setBorder(new EmptyBorder(10, 10, 10, 10)); // Padding for labels
-                JTextField textField = new JTextField(config.getProperty(key, ""));
+                JTextField textField = new JTextField(properties.getProperty(key, ""));
                 textField.setBorder(new EmptyBorder(10, 10, 10, 10)); // Padding for text fields
                 configPanel.add(label);
                 configPanel.add(textField);
@@ -110,11 +129,11 @@ public class ConfigWindow extends JFrame {
         }
 
         // Add remaining settings that are not in the friendlyTextLookup table
-        for (String key : config.stringPropertyNames()) {
+        for (String key : properties.stringPropertyNames()) {
             if (!friendlyTextLookup.containsKey(key)) {
                 JLabel label = new JLabel(key);
                 label.setBorder(new EmptyBorder(5, 10, 5, 10));
-                JTextField textField = new JTextField(config.getProperty(key));
+                JTextField textField = new JTextField(properties.getProperty(key));
                 textField.setBorder(new EmptyBorder(5, 10, 5, 10));
                 configPanel.add(label);
                 configPanel.add(textField);
@@ -131,19 +150,23 @@ public class ConfigWindow extends JFrame {
             // Only update if it's not a header
             if (!key.startsWith("HEADER_")) {
                 JTextField textField = (JTextField) components[i + 1];
-                config.setProperty(key, textField.getText());
+                properties.setProperty(key, textField.getText());
             }
         }
 
-        try (FileOutputStream out = new FileOutputStream("config.properties")) {
-            config.store(out, null);
+        try {
+            config.save(properties);
             // Close window
             Window window = SwingUtilities.getWindowAncestor(configPanel);
             if (window != null) {
                 window.dispose(); // Closes the JFrame or JDialog
             }
             //Display alert
-            JOptionPane.showMessageDialog(this, "Configuration saved. Please restart the application to apply changes.");
+            JOptionPane.showMessageDialog(this, "Configuration saved. It will be used from the next order file, "
+                    + "the console shows any changes that need the application restarting.");
+        } catch (IllegalArgumentException ex) {
+            // Nothing was saved, so the window stays open to correct it
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(this, "Error saving configuration: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
@@ -3,12 +3,14 @@ package com.newfangledthings.clickdropprinthelper;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URL;
 
 public class ConsoleWindow extends JFrame {
+    // How much output to keep, older lines are dropped once there is more than this
+    private static final int MAX_CHARACTERS = 500_000;
     private JTextArea textArea;
+    private final LogSink logSink;
 
     public ConsoleWindow() {
         setTitle("Console Output");
@@ -20,28 +22,32 @@ public class ConsoleWindow extends JFrame {
         add(new JScrollPane(textArea));
         setLocationRelativeTo(null);
 
+        // Redirect System.out and System.err to the JTextArea, the sink queues the output so printing never waits on Swing
+        logSink = new LogSink(textArea, MAX_CHARACTERS);
+        PrintStream printStream = new PrintStream(logSink, true); // Enable auto-flush
+        System.setOut(printStream);
+        System.setErr(printStream);
+
         URL imageUrl = WindowsApp.class.getResource("/icon.png");
         if (imageUrl == null) {
             System.err.println("Icon image not found!");
             return;
         }
         setIconImage(new ImageIcon(imageUrl).getImage());
+    }
 
-        // Redirect System.out and System.err to the JTextArea
-        PrintStream printStream = new PrintStream(new OutputStream() {
-            @Override
-            public void write(int b) {
-                textArea.append(String.valueOf((char) b));
-                textArea.setCaretPosition(textArea.getDocument().getLength());
-            }
-
-            @Override
-            public void write(byte[] b, int off, int len) {
-                textArea.append(new String(b, off, len));
-                textArea.setCaretPosition(textArea.getDocument().getLength());
-            }
-        }, true); // Enable auto-flush
-        System.setOut(printStream);
-        System.setErr(printStream);
+    /**
+     * Also write the console output to a log file, if one is set in the config
+     *
+     * @param config is the loaded config
+     */
+    public void setLogFile(Config config) {
+        Settings settings = config.getSettings();
+        String logFile = settings.getLogFile();
+        if (logFile.isEmpty()) {
+            return;
+        }
+        logSink.setLogFile(logFile, settings.getLogFileMaxSizeKB() * 1024);
+        System.out.println("Writing console output to " + logFile);
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares one pool of workers between the profiles, so one busy watch folder cannot hold up the others.
+ * <p>
+ * Each profile has its own queue, and whenever a worker is free it takes the next job from the next
+ * profile in turn that has one waiting. A folder with a hundred files waiting still only gets every
+ * other worker when a second folder has a file, and the pool and PDFBox are only warmed up once.
+ */
+public class FairScheduler {
+    private final ExecutorService workers;
+    private final int threads;
+    private final Map<String, Deque<Runnable>> queues = new HashMap<>();
+    // The profiles with jobs waiting, in the order they get their next turn
+    private final Deque<String> turns = new ArrayDeque<>();
+    private int running;
+    private boolean shutdown;
+
+    /**
+     * @param threads is the number of jobs that can run at the same time across every profile
+     */
+    public FairScheduler(int threads) {
+        this.threads = Math.max(1, threads);
+        this.workers = WorkerPool.create(this.threads);
+    }
+
+    /**
+     * @param profile is the profile the job is for
+     * @param job     is the job, which runs once it is the profile's turn and a worker is free
+     */
+    public synchronized void submit(String profile, Runnable job) {
+        if (shutdown) {
+            return;
+        }
+        queues.computeIfAbsent(profile, key -> new ArrayDeque<>()).add(job);
+        if (!turns.contains(profile)) {
+            turns.add(profile);
+        }
+        startNext();
+    }
+
+    private synchronized void startNext() {
+        while (!shutdown && running < threads && !turns.isEmpty()) {
+            String profile = turns.poll();
+            Deque<Runnable> queue = queues.get(profile);
+            Runnable job = queue.poll();
+            if (!queue.isEmpty()) {
+                // Back of the line, behind every other profile with a job waiting
+                turns.add(profile);
+            }
+            running++;
+            workers.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    finished();
+                }
+            });
+        }
+    }
+
+    private synchronized void finished() {
+        running--;
+        startNext();
+    }
+
+    /**
+     * Let the jobs that are running finish, but do not start any more
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        queues.clear();
+        turns.clear();
+        workers.shutdown();
+    }
+
+    /**
+     * Do not start any more jobs, and interrupt the ones that are running
+     */
+    public synchronized void shutdownNow() {
+        shutdown();
+        workers.shutdownNow();
+    }
+
+    /**
+     * @return true if every job that was running has finished
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,166 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Works out when a downloaded file has finished being written, so it can be processed
+ * as soon as it is complete and not before.
+ * <p>
+ * A file is ready once its size and modified time have not changed for the stable time
+ * and it can be opened exclusively, which fails on Windows while the browser still has it open.
+ */
+public class FileReadinessDetector {
+    // Names browsers and editors use while a download is still in progress
+    private static final String[] PARTIAL_SUFFIXES = {".crdownload", ".part", ".partial", ".download", ".tmp"};
+    // Give up on a file that is still changing after this long
+    private static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_COMPLETED = 1000;
+
+    private final Path folder;
+    private final long checkIntervalMillis;
+    private final long stableMillis;
+    private final Consumer<String> onReady;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Candidate> pending = new ConcurrentHashMap<>();
+    // The size and modified time of files already handed over, so a late modify event does not process them twice
+    private final Map<String, String> completed = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_COMPLETED;
+        }
+    };
+
+    /**
+     * @param folder              is the folder the files are in
+     * @param checkIntervalMillis is how often to check a file that is not ready yet
+     * @param stableMillis        is how long the size and modified time must stay the same
+     * @param onReady             is called with the filename once the file is ready
+     */
+    public FileReadinessDetector(Path folder, long checkIntervalMillis, long stableMillis, Consumer<String> onReady) {
+        this.folder = folder;
+        this.checkIntervalMillis = Math.max(10, checkIntervalMillis);
+        this.stableMillis = Math.max(0, stableMillis);
+        this.onReady = onReady;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(WorkerPool.createThreadFactory("readiness"));
+    }
+
+    /**
+     * @param filename is the name of a file in the folder
+     * @return true if the name is one used for a download that has not finished
+     */
+    public static boolean isPartialDownload(String filename) {
+        String lower = filename.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("~") || lower.startsWith(".~")) {
+            return true;
+        }
+        for (String suffix : PARTIAL_SUFFIXES) {
+            if (lower.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called for every create or modify event on the file. The first event starts checking
+     * the file, later events are ignored as the check is already running.
+     *
+     * @param filename is the name of the file in the folder
+     */
+    public void fileChanged(String filename) {
+        if (isPartialDownload(filename)) {
+            return;
+        }
+        Candidate candidate = new Candidate(filename);
+        if (pending.putIfAbsent(filename, candidate) == null) {
+            scheduler.execute(() -> check(candidate));
+        }
+    }
+
+    private void check(Candidate candidate) {
+        Path path = folder.resolve(candidate.filename);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long now = System.currentTimeMillis();
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (size != candidate.size || modified != candidate.modified) {
+                candidate.size = size;
+                candidate.modified = modified;
+                candidate.stableSince = now;
+            } else if (size > 0 && now - candidate.stableSince >= stableMillis && canOpenExclusively(path)) {
+                pending.remove(candidate.filename);
+                String signature = size + ":" + modified;
+                synchronized (completed) {
+                    if (signature.equals(completed.put(candidate.filename, signature))) {
+                        return;
+                    }
+                }
+                onReady.accept(candidate.filename);
+                return;
+            }
+            if (now - candidate.started > MAX_WAIT_MILLIS) {
+                pending.remove(candidate.filename);
+                System.out.println("Gave up waiting for " + candidate.filename + " to finish downloading");
+                return;
+            }
+            scheduler.schedule(() -> check(candidate), checkIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (NoSuchFileException e) {
+            // Renamed or deleted before it was finished, the new name will have its own event
+            pending.remove(candidate.filename);
+        } catch (IOException e) {
+            pending.remove(candidate.filename);
+            System.err.println("Error checking " + candidate.filename + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean canOpenExclusively(Path path) {
+        try {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock lock = channel.tryLock()) {
+                return lock != null;
+            } catch (AccessDeniedException e) {
+                // Read only file, it can still be processed as long as nothing else has it open
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                     FileLock lock = channel.tryLock(0, Long.MAX_VALUE, true)) {
+                    return lock != null;
+                }
+            }
+        } catch (IOException e) {
+            // Still open in the program that is writing it
+            return false;
+        }
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static class Candidate {
+        private final String filename;
+        private final long started = System.currentTimeMillis();
+        private long size = -1;
+        private long modified = -1;
+        private long stableSince;
+
+        private Candidate(String filename) {
+            this.filename = filename;
+        }
+    }
+}
@@ -1,135 +1,394 @@
 // FileWatcher.java
 package com.newfangledthings.clickdropprinthelper;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javax.swing.*;
 import java.awt.Toolkit;
 
 public class FileWatcher {
     private final Config config;
-    private final ProofOfPostageCreator proofOfPostageCreator;
+    private final OrderProcessor orderProcessor;
     private final PDFViewer pdfViewer;
+    private final PDFPrinter pdfPrinter;
     private final boolean consoleMode;
+    // These are only read when watching starts, the rest of the settings are read for each set of files
+    private final List<Folder> folders = new ArrayList<>();
+    private final int processingThreads;
+    private final long metricsSummaryInterval;
+    private final ProcessingMetrics metrics = ProcessingMetrics.get();
+    // Only one file at a time can ask the user what to do, and waiting for an answer does not take a worker
+    private final ExecutorService promptThread = Executors.newSingleThreadExecutor(WorkerPool.createThreadFactory("prompt"));
+    private volatile Consumer<String> fileProcessedListener;
+
+    /**
+     * A watch folder and the profile whose settings its files are processed with
+     */
+    private static class Folder {
+        private final String profile;
+        private final String profileName;
+        private final String watchFolder;
+        private final long fileReadyCheckInterval;
+        private final long fileReadyStableTime;
+        // The files waiting for the batch window to close, the first one to arrive starts the window
+        private final List<String> batchFiles = new ArrayList<>();
+        private FileReadinessDetector readinessDetector;
+
+        private Folder(Settings settings) {
+            this.profile = settings.getProfile();
+            this.profileName = settings.getProfileName();
+            this.watchFolder = settings.getWatchFolder();
+            this.fileReadyCheckInterval = settings.getFileReadyCheckInterval();
+            this.fileReadyStableTime = settings.getFileReadyStableTime();
+        }
+
+        // Only named profiles are mentioned, so the messages are the same as before when there is only the one folder
+        private String describe(String filename) {
+            return profile.isEmpty() ? filename : filename + " for " + profileName;
+        }
+    }
 
     public FileWatcher(Config config, boolean consoleMode) {
         this.config = config;
-        this.proofOfPostageCreator = new ProofOfPostageCreator(config);
+        this.orderProcessor = new OrderProcessor(config);
         this.pdfViewer = new PDFViewer(config);
+        this.pdfPrinter = new PDFPrinter();
         this.consoleMode = consoleMode;
+        for (Settings settings : config.getProfiles()) {
+            folders.add(new Folder(settings));
+        }
+        Settings settings = config.getSettings();
+        this.processingThreads = settings.getProcessingThreads();
+        this.metricsSummaryInterval = settings.getMetricsSummaryInterval();
     }
 
     public void watch() throws IOException, InterruptedException {
-        String watchFolder = config.getProperty("WatchFolder");
-        String storeFolder = config.getProperty("StoreFolder");
-        boolean createProofOfPostage = config.getProperty("CreateProofOfPostage").equals("yes");
-        boolean createLabels = config.getProperty("CreateLabels").equals("yes");
-        boolean createPackingSlips = config.getProperty("CreatePackingSlips").equals("yes");
-        boolean createQRs = config.getProperty("CreateQRs").equals("yes");
-        String beforeRun = config.getProperty("BeforeRun");
-        boolean includePrintOption = pdfViewer.checkPrintIsOption();
         System.out.println("Properties loaded from " + config.getConfigName());
-        System.out.println("Will " + (createProofOfPostage ? "" : "NOT ") + "create proof of postage pdf");
-        System.out.println("Will " + (createQRs ? "" : "NOT ") + "create additional QR page");
-        System.out.println("Will " + (createPackingSlips ? "" : "NOT ") + "create packing slips pdf");
-        System.out.println("Will " + (createLabels ? "" : "NOT ") + "create labels pdf");
-        System.out.println("Will " + (includePrintOption ? "" : "NOT ") + "include print option");
-        System.out.println("Created pdf's will be stored in folder " + storeFolder);
+        printSettings();
+        config.setReloadListener(this::printSettings);
+        Closeable configWatcher = config.watch();
+
+        // Every folder shares the one pool, taking turns so a folder with a lot of files cannot hold up the rest
+        FairScheduler workers = new FairScheduler(processingThreads);
+        System.out.println("Processing files with " + processingThreads + " worker(s)");
+        ScheduledExecutorService summary = startMetricsSummary();
+        ScheduledExecutorService batchScheduler = Executors.newSingleThreadScheduledExecutor(WorkerPool.createThreadFactory("batch"));
 
         WatchService watchService = FileSystems.getDefault().newWatchService();
-        Path path = Paths.get(watchFolder);
-        path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
-        System.out.println("Monitoring download folder " + watchFolder);
-
-        boolean poll = true;
-        WatchKey key = watchService.take();
-
-        while (poll) {
-            for (WatchEvent<?> event : key.pollEvents()) {
-                TimeUnit.SECONDS.sleep(1);
-                String filename = event.context().toString();
-                int userResponse = 0;
-
-                if (filename.startsWith("order") && filename.endsWith(".pdf")) {
-                    Toolkit.getDefaultToolkit().beep();
-
-                    if ("prompt".equals(beforeRun)) {
-                        if (consoleMode) {
-                            Scanner scanner = new Scanner(System.in);
-                            System.out.println("Found " + filename + ". What do you want to do?");
-                            System.out.println("Options: " + (includePrintOption ? "1. Ignore 2. Create 3. Create & Print" : "1. Ignore 2. Create"));
-                            userResponse = scanner.nextInt() - 1;
-                        } else {
-                            JDialog dialog = new JDialog();
-                            dialog.setAlwaysOnTop(true);
-                            dialog.setModal(true);
-                            dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
-
-                            userResponse = JOptionPane.showOptionDialog(dialog,
-                                    "Found " + filename + ". What do you want to do?",
-                                    "Royal Mail Click & Drop file detected",
-                                    JOptionPane.DEFAULT_OPTION,
-                                    JOptionPane.QUESTION_MESSAGE,
-                                    null,
-                                    includePrintOption ? new String[]{"Ignore", "Create", "Create & Print"} : new String[]{"Ignore","Create"},
-                                    null);
-
-                            dialog.dispose();
-                        }
-
-                        if (userResponse == 0) {
-                            System.out.println("Ignoring file " + filename);
-                            continue;
-                        }
+        Map<WatchKey, Folder> watchKeys = new HashMap<>();
+        try {
+            for (Folder folder : folders) {
+                // The batch window is checked as each file is ready, so turning it on or off takes effect straight away
+                Consumer<String> fileReady = filename -> {
+                    Settings settings = config.getSettings(folder.profile);
+                    long batchWindow = settings == null ? 0 : settings.getBatchWindow();
+                    if (batchWindow > 0) {
+                        addToBatch(folder, filename, batchWindow, batchScheduler, workers);
+                    } else {
+                        queue(folder, List.of(filename), workers);
                     }
+                };
+                Path path = Paths.get(folder.watchFolder);
+                watchKeys.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), folder);
+                folder.readinessDetector = new FileReadinessDetector(path, folder.fileReadyCheckInterval, folder.fileReadyStableTime, fileReady);
+                System.out.println("Monitoring download folder " + folder.watchFolder
+                        + (folder.profile.isEmpty() ? "" : " for " + folder.profileName));
+                resumeUnfinished(folder, workers);
+            }
 
-                    var proofOfPostages = proofOfPostageCreator.createProofOfPostage(filename);
-                    if (proofOfPostages == null) {
-                        System.out.println("NOT recognised as Click & Drop file, finished processing early");
-                        continue;
+            while (!watchKeys.isEmpty()) {
+                WatchKey key = watchService.take();
+                Folder folder = watchKeys.get(key);
+                // Only queue the files here, so the next download is seen while the last one is still being processed
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    String filename = event.context().toString();
+                    if (filename.startsWith("order") && filename.endsWith(".pdf")) {
+                        folder.readinessDetector.fileChanged(filename);
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        System.out.println("Ignoring file " + folder.describe(filename));
                     }
-                    for (ProofOfPostage proofOfPostage : proofOfPostages) {
-                        if (createQRs) {
-                            proofOfPostageCreator.addQRCodesToProofOfPostage(proofOfPostage);
-                        }
-                        if (!createProofOfPostage) {
-                            if (!createQRs) {
-                                System.out.println("Deleting pdf " + filename);
-                                Files.delete(Paths.get(watchFolder + "\\" + event.context()));
-                            } else {
-                                proofOfPostageCreator.removeFirstPage(proofOfPostage);
-                                System.out.println("Removed proof of postage page from " + filename);
-                            }
-                        }
-                        pdfViewer.openPDF(storeFolder + "\\" + proofOfPostage.getFilename(), userResponse == 1 ? "ViewerExecuteProofOfPostage" : "ViewerExecutePrintProofOfPostage");
-
-                        if (proofOfPostage.getImageIndex() == 0) {
-                            if (createPackingSlips) {
-                                var packingFilename = FilenameGenerator.generateFilename(filename, "packing");
-                                proofOfPostageCreator.createPackingSlips(proofOfPostage, packingFilename);
-                                pdfViewer.openPDF(storeFolder + "\\" + packingFilename, userResponse == 1 ? "ViewerExecutePackingSlip" : "ViewerExecutePrintPackingSlip");
-                                System.out.println("Created packing slips pdf " + packingFilename);
-                            }
-                            if (createLabels) {
-                                var labelsFilename = FilenameGenerator.generateFilename(filename, "labels", "pdf");
-                                proofOfPostageCreator.createLabels(proofOfPostage, labelsFilename);
-                                pdfViewer.openPDF(storeFolder + "\\" + labelsFilename, userResponse == 1 ? "ViewerExecuteLabels" : "ViewerExecutePrintLabels");
-                                System.out.println("Created labels pdf " + labelsFilename);
-                            }
-                        }
-                        if ("stop".equals(beforeRun)) {
-                            System.out.println("Stopping watching folder after first run");
-                            System.exit(0);
-                        }
-                    }
-                    System.out.println("Finished processing file " + filename);
-                } else {
-                    System.out.println("Ignoring file " + event.context());
+                }
+                if (!key.reset()) {
+                    System.err.println("Stopped monitoring download folder " + folder.watchFolder + " as it can no longer be watched");
+                    watchKeys.remove(key);
+                }
+            }
+        } finally {
+            if (summary != null) {
+                summary.shutdownNow();
+            }
+            for (Folder folder : folders) {
+                if (folder.readinessDetector != null) {
+                    folder.readinessDetector.close();
+                }
+            }
+            batchScheduler.shutdownNow();
+            promptThread.shutdownNow();
+            workers.shutdown();
+            watchService.close();
+            configWatcher.close();
+            try {
+                // The files already being processed are given the chance to finish before their ledger is closed
+                if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                    System.err.println("Stopped waiting for files to finish processing");
+                    workers.shutdownNow();
+                    workers.awaitTermination(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                try {
+                    orderProcessor.close();
+                } finally {
+                    pdfViewer.close();
+                    pdfPrinter.close();
+                }
+            }
+        }
+    }
+
+    private void printSettings() {
+        for (Settings settings : config.getProfiles()) {
+            if (!settings.getProfile().isEmpty()) {
+                System.out.println("Settings for " + settings.getProfileName() + ":");
+            }
+            printSettings(settings);
+        }
+    }
+
+    private void printSettings(Settings settings) {
+        orderProcessor.printSettings(settings);
+        System.out.println("Will " + (includePrintOption(settings) ? "" : "NOT ") + "include print option");
+        if (settings.getBatchWindow() > 0) {
+            System.out.println("Orders arriving within " + settings.getBatchWindow() + " seconds of each other will be combined");
+        }
+    }
+
+    private boolean includePrintOption(Settings settings) {
+        return settings.hasPrintCommand() || pdfPrinter.hasAnyPrinter(settings);
+    }
+
+    /**
+     * Print a summary of the metrics every so often, but only when something has been processed since the last one
+     *
+     * @return the scheduler printing the summary, or null if it is turned off
+     */
+    private ScheduledExecutorService startMetricsSummary() {
+        if (metricsSummaryInterval <= 0) {
+            return null;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(WorkerPool.createThreadFactory("metrics"));
+        long[] lastFilesProcessed = {0};
+        scheduler.scheduleAtFixedRate(() -> {
+            long filesProcessed = metrics.getFilesProcessed();
+            if (filesProcessed != lastFilesProcessed[0]) {
+                lastFilesProcessed[0] = filesProcessed;
+                System.out.println("Metrics: " + metrics.getSummary());
+            }
+        }, metricsSummaryInterval, metricsSummaryInterval, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    /**
+     * Carry on with any order files in the watch folder that were being processed when the app last stopped
+     *
+     * @param folder  is the watch folder
+     * @param workers processes the files
+     */
+    private void resumeUnfinished(Folder folder, FairScheduler workers) throws IOException {
+        Settings settings = config.getSettings(folder.profile);
+        Path path = Paths.get(folder.watchFolder).toAbsolutePath().normalize();
+        // Profiles sharing a store folder share its ledger, so only the files from this folder are resumed here
+        for (List<File> files : orderProcessor.getUnfinished(settings)) {
+            List<String> filenames = new ArrayList<>();
+            for (File file : files) {
+                if (path.equals(file.toPath().getParent())) {
+                    filenames.add(file.getName());
                 }
             }
-            poll = key.reset();
+            if (!filenames.isEmpty()) {
+                System.out.println("Resuming " + folder.describe(String.join(", ", filenames)) + " as it did not finish processing");
+                queue(folder, filenames, workers);
+            }
+        }
+    }
+
+    /**
+     * Hold the file until the batch window closes, so it is processed with any others that arrive in the meantime
+     *
+     * @param folder      is the watch folder the file is in, each folder has its own batch
+     * @param filename    is the order file in the watch folder
+     * @param batchWindow is how long the window stays open in seconds, if this file opens it
+     * @param scheduler   closes the window
+     * @param workers     processes the batch once the window has closed
+     */
+    private void addToBatch(Folder folder, String filename, long batchWindow, ScheduledExecutorService scheduler, FairScheduler workers) {
+        List<String> batchFiles = folder.batchFiles;
+        synchronized (batchFiles) {
+            if (batchFiles.contains(filename)) {
+                return;
+            }
+            batchFiles.add(filename);
+            if (batchFiles.size() > 1) {
+                return;
+            }
+        }
+        scheduler.schedule(() -> {
+            List<String> filenames;
+            synchronized (batchFiles) {
+                filenames = new ArrayList<>(batchFiles);
+                batchFiles.clear();
+            }
+            queue(folder, filenames, workers);
+        }, batchWindow, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hand the files to the workers, first asking the user what to do with them if the profile prompts.
+     * The user is asked on the prompt thread, so while one profile waits for an answer its files do not
+     * take a worker from the others
+     *
+     * @param folder    is the watch folder the files are in
+     * @param filenames is the order files in the watch folder, more than one if they are to be combined
+     * @param workers   processes the files
+     */
+    private void queue(Folder folder, List<String> filenames, FairScheduler workers) {
+        Toolkit.getDefaultToolkit().beep();
+        Settings settings = config.getSettings(folder.profile);
+        if (settings == null || settings.getBeforeRun() != Settings.BeforeRun.PROMPT) {
+            workers.submit(folder.profile, () -> processSafely(folder, filenames, true));
+            return;
         }
+        promptThread.execute(() -> {
+            String filename = folder.describe(String.join(", ", filenames));
+            int userResponse;
+            try {
+                userResponse = prompt(filename, includePrintOption(settings));
+            } catch (RuntimeException e) {
+                metrics.error();
+                System.err.println("Error asking what to do with " + filename + ": " + e.getMessage());
+                fileProcessed(filenames);
+                return;
+            }
+            if (userResponse == 0) {
+                System.out.println("Ignoring file " + filename);
+                fileProcessed(filenames);
+                return;
+            }
+            boolean print = userResponse != 1;
+            workers.submit(folder.profile, () -> processSafely(folder, filenames, print));
+        });
+    }
+
+    /**
+     * Process the files on a worker, making sure a failure with one batch of order files
+     * does not affect any of the others
+     *
+     * @param folder    is the watch folder the files are in
+     * @param filenames is the order files in the watch folder, more than one if they are to be combined
+     * @param print     is true if the created pdfs are to be printed
+     */
+    private void processSafely(Folder folder, List<String> filenames, boolean print) {
+        try {
+            processFiles(folder, filenames, print);
+        } catch (Exception e) {
+            metrics.error();
+            System.err.println("Error processing " + folder.describe(String.join(", ", filenames)) + ": " + e.getMessage());
+            e.printStackTrace(System.err);
+        } finally {
+            fileProcessed(filenames);
+        }
+    }
+
+    private void fileProcessed(List<String> filenames) {
+        Consumer<String> listener = fileProcessedListener;
+        if (listener != null) {
+            for (String filename : filenames) {
+                listener.accept(filename);
+            }
+        }
+    }
+
+    /**
+     * @return the indexes of every parcel processed, one for each different store folder, to find which pdfs it is in
+     */
+    public List<ParcelIndex> getParcelIndexes() {
+        return orderProcessor.getParcelIndexes();
+    }
+
+    /**
+     * @param fileProcessedListener is called with the filename each time a file has finished processing, whether it worked or not
+     */
+    public void setFileProcessedListener(Consumer<String> fileProcessedListener) {
+        this.fileProcessedListener = fileProcessedListener;
+    }
+
+    private void processFiles(Folder folder, List<String> filenames, boolean print) throws IOException {
+        String filename = folder.describe(String.join(", ", filenames));
+        // The settings are taken once, so a reload part way through does not change how these files are processed
+        Settings settings = config.getSettings(folder.profile);
+        if (settings == null) {
+            System.out.println("Ignoring file " + filename + " as the profile has been removed, restart to stop watching its folder");
+            return;
+        }
+
+        List<File> files = new ArrayList<>();
+        for (String name : filenames) {
+            files.add(new File(folder.watchFolder + File.separator + name));
+        }
+        orderProcessor.process(settings, files, (createdFilename, outputType) -> {
+            // Print in the app when there is a printer for it, otherwise use the viewer command
+            if (print && pdfPrinter.hasPrinter(settings, outputType)) {
+                pdfPrinter.print(settings, outputType, createdFilename);
+            } else {
+                pdfViewer.openPDF(settings, createdFilename, outputType, print);
+            }
+        });
+        if (settings.getBeforeRun() == Settings.BeforeRun.STOP) {
+            System.out.println("Stopping watching folder after first run");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Ask the user what to do with the file, either on the console or with a dialog
+     *
+     * @param filename           is the order file that was found, or the files if they are being combined
+     * @param includePrintOption is true if the pdfs can be printed
+     * @return 0 to ignore, 1 to create and 2 to create and print
+     */
+    private int prompt(String filename, boolean includePrintOption) {
+        if (consoleMode) {
+            Scanner scanner = new Scanner(System.in);
+            System.out.println("Found " + filename + ". What do you want to do?");
+            System.out.println("Options: " + (includePrintOption ? "1. Ignore 2. Create 3. Create & Print" : "1. Ignore 2. Create"));
+            return scanner.nextInt() - 1;
+        }
+        JDialog dialog = new JDialog();
+        dialog.setAlwaysOnTop(true);
+        dialog.setModal(true);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+
+        int userResponse = JOptionPane.showOptionDialog(dialog,
+                "Found " + filename + ". What do you want to do?",
+                "Royal Mail Click & Drop file detected",
+                JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE,
+                null,
+                includePrintOption ? new String[]{"Ignore", "Create", "Create & Print"} : new String[]{"Ignore","Create"},
+                null);
+
+        dialog.dispose();
+        return userResponse;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,205 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps images read from disk, such as the packing slip header and footer, so they are only
+ * decoded and encoded again when the file is changed.
+ * <p>
+ * Each image is encoded once, and the encoded stream is kept. It is then copied into each pdf as it is,
+ * so no pdf pays for compressing the image again.
+ */
+public class ImageCache {
+    private final Map<Path, CachedImage> images = new ConcurrentHashMap<>();
+
+    /**
+     * Add the image to the document, using the cached copy if the file has not changed since it was read
+     *
+     * @param filename is the image file
+     * @param document is the document the image will be drawn in
+     * @return the image, or null if the file does not exist
+     */
+    public PDImageXObject createImage(String filename, PDDocument document) throws IOException {
+        if (filename == null || filename.isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(filename);
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(path).toMillis();
+        } catch (NoSuchFileException e) {
+            images.remove(path);
+            return null;
+        }
+        CachedImage cached = images.get(path);
+        if (cached == null || cached.modified != modified) {
+            cached = CachedImage.read(path, modified);
+            images.put(path, cached);
+        }
+        return cached.createImage(document);
+    }
+
+    private static class CachedImage {
+        private final long modified;
+        private final byte[] jpeg;
+        private final BufferedImage image;
+        // Null if the encoded image cannot be copied as it is, so it is encoded for each pdf instead
+        private final EncodedImage encoded;
+
+        private CachedImage(long modified, byte[] jpeg, BufferedImage image) throws IOException {
+            this.modified = modified;
+            this.jpeg = jpeg;
+            this.image = image;
+            try (PDDocument scratch = new PDDocument()) {
+                this.encoded = EncodedImage.copy(encode(scratch).getCOSObject());
+            }
+        }
+
+        private static CachedImage read(Path path, long modified) throws IOException {
+            byte[] bytes = Files.readAllBytes(path);
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            // A jpeg can be embedded as it is, anything else is decoded and embedded without loss
+            if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+                return new CachedImage(modified, bytes, null);
+            }
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null) {
+                throw new IOException("Unable to read image " + path);
+            }
+            return new CachedImage(modified, null, image);
+        }
+
+        private PDImageXObject encode(PDDocument document) throws IOException {
+            if (jpeg != null) {
+                return JPEGFactory.createFromByteArray(document, jpeg);
+            }
+            return LosslessFactory.createFromImage(document, image);
+        }
+
+        private PDImageXObject createImage(PDDocument document) throws IOException {
+            if (encoded != null) {
+                return new PDImageXObject(new PDStream(encoded.createStream(document)), null);
+            }
+            return encode(document);
+        }
+    }
+
+    /**
+     * The encoded bytes and dictionary of an image stream, and of its soft mask if it has one
+     */
+    private static class EncodedImage {
+        private final COSDictionary dictionary;
+        private final byte[] data;
+        private final EncodedImage softMask;
+
+        private EncodedImage(COSDictionary dictionary, byte[] data, EncodedImage softMask) {
+            this.dictionary = dictionary;
+            this.data = data;
+            this.softMask = softMask;
+        }
+
+        /**
+         * @param stream is the image stream as it was encoded
+         * @return the copy, or null if the dictionary refers to anything but plain values, such as an ICC profile
+         */
+        private static EncodedImage copy(COSStream stream) throws IOException {
+            COSDictionary dictionary = new COSDictionary();
+            EncodedImage softMask = null;
+            for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+                if (COSName.LENGTH.equals(entry.getKey())) {
+                    continue;
+                }
+                if (COSName.SMASK.equals(entry.getKey())) {
+                    COSBase mask = stream.getDictionaryObject(COSName.SMASK);
+                    softMask = mask instanceof COSStream ? copy((COSStream) mask) : null;
+                    if (softMask == null) {
+                        return null;
+                    }
+                    continue;
+                }
+                COSBase value = copyValue(entry.getValue());
+                if (value == null) {
+                    return null;
+                }
+                dictionary.setItem(entry.getKey(), value);
+            }
+            try (InputStream input = stream.createRawInputStream()) {
+                return new EncodedImage(dictionary, input.readAllBytes(), softMask);
+            }
+        }
+
+        private static COSBase copyValue(COSBase value) {
+            if (value instanceof COSName || value instanceof COSNumber || value instanceof COSBoolean) {
+                return value;
+            }
+            if (value instanceof COSArray) {
+                COSArray copy = new COSArray();
+                for (COSBase item : (COSArray) value) {
+                    COSBase itemCopy = copyValue(item);
+                    if (itemCopy == null) {
+                        return null;
+                    }
+                    copy.add(itemCopy);
+                }
+                return copy;
+            }
+            if (value instanceof COSDictionary && !(value instanceof COSStream)) {
+                COSDictionary copy = new COSDictionary();
+                for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+                    COSBase entryCopy = copyValue(entry.getValue());
+                    if (entryCopy == null) {
+                        return null;
+                    }
+                    copy.setItem(entry.getKey(), entryCopy);
+                }
+                return copy;
+            }
+            // A reference to another object, which would have to be copied as well
+            return null;
+        }
+
+        /**
+         * @param document is the pdf to add the image to
+         * @return a new stream in the pdf with the encoded bytes written as they are
+         */
+        private COSStream createStream(PDDocument document) throws IOException {
+            COSStream stream = document.getDocument().createCOSStream();
+            for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+                // Arrays and dictionaries are copied again, so no two pdfs share anything that could be changed
+                stream.setItem(entry.getKey(), copyValue(entry.getValue()));
+            }
+            try (OutputStream output = stream.createRawOutputStream()) {
+                output.write(data);
+            }
+            if (softMask != null) {
+                stream.setItem(COSName.SMASK, softMask.createStream(document));
+            }
+            return stream;
+        }
+    }
+}
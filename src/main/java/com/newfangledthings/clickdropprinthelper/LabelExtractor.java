@@ -0,0 +1,180 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.text.PDFTextStripperByArea;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the text of a page of an order, and the shipping labels on it from each quarter of the page on its own.
+ * <p>
+ * The page is only read once for the whole page and its four quarters, and nothing is kept from one page to
+ * the next, so each page stands on its own. The fields of a label are found from what they say rather than
+ * how far down the text they are, and the text is split on any line ending.
+ */
+class LabelExtractor {
+    private static final String PAGE = "page";
+    private static final int LABELS_PER_PAGE = 4;
+    // How far a page can be from A4 and still be taken as 4 labels to a page
+    private static final float A4_TOLERANCE = 10;
+    private static final Pattern LINE_ENDING = Pattern.compile("\\R");
+    private static final Pattern POSTCODE = Pattern.compile("(?i)\\b[A-Z]{1,2}[0-9][A-Z0-9]? ?[0-9][A-Z]{2}\\b");
+    private static final Pattern TRACKING_NUMBER = Pattern.compile("\\b[A-Z]{2} ?[0-9]{4} ?[0-9]{4} ?[0-9][A-Z]{2}\\b");
+    // Most addresses are 3 lines after the name, but a longer one ends at its postcode
+    private static final int ADDRESS_LINES = 3;
+    private static final int MAX_ADDRESS_LINES = 6;
+
+    /**
+     * The text of a page and any shipping labels found on it
+     */
+    static class PageText {
+        private final String text;
+        private final List<ShippingLabel> labels;
+
+        private PageText(String text, List<ShippingLabel> labels) {
+            this.text = text;
+            this.labels = labels;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        List<ShippingLabel> getLabels() {
+            return labels;
+        }
+    }
+
+    private final PDFTextStripperByArea stripper;
+
+    LabelExtractor() throws IOException {
+        this.stripper = new PDFTextStripperByArea();
+        this.stripper.setLineSeparator("\n");
+        // The quarters overlap the whole page region, and each character is in both, so neither is a duplicate
+        this.stripper.setSuppressDuplicateOverlappingText(false);
+    }
+
+    /**
+     * @param page      is the page to read
+     * @param pageIndex is the zero based index of the page, which is given to each label
+     * @return the text of the whole page, and the labels from each of its quarters in reading order
+     */
+    PageText extract(PDPage page, int pageIndex) throws IOException {
+        PDRectangle box = page.getCropBox();
+        boolean turned = page.getRotation() % 180 != 0;
+        float width = turned ? box.getHeight() : box.getWidth();
+        float height = turned ? box.getWidth() : box.getHeight();
+        boolean quartered = isA4(width, height);
+
+        // The regions are from the top left of the page as it is shown
+        stripper.addRegion(PAGE, new Rectangle2D.Float(0, 0, width, height));
+        for (int quadrant = 0; quadrant < LABELS_PER_PAGE; quadrant++) {
+            stripper.addRegion(String.valueOf(quadrant), new Rectangle2D.Float(
+                    (quadrant % 2) * width / 2, (quadrant / 2) * height / 2, width / 2, height / 2));
+        }
+        stripper.extractRegions(page);
+
+        String text = stripper.getTextForRegion(PAGE);
+        if (!text.contains("Shipping Address")) {
+            return new PageText(text, Collections.emptyList());
+        }
+        List<ShippingLabel> labels = new ArrayList<>();
+        if (quartered) {
+            for (int quadrant = 0; quadrant < LABELS_PER_PAGE; quadrant++) {
+                ShippingLabel label = parse(stripper.getTextForRegion(String.valueOf(quadrant)), pageIndex, quadrant);
+                if (label != null) {
+                    labels.add(label);
+                }
+            }
+        } else {
+            // Not an A4 sheet, such as a 6x4 label, so the whole page is the one label
+            ShippingLabel label = parse(text, pageIndex, 0);
+            if (label != null) {
+                labels.add(label);
+            }
+        }
+        return new PageText(text, labels);
+    }
+
+    static boolean isA4(float width, float height) {
+        return Math.abs(width - PDRectangle.A4.getWidth()) < A4_TOLERANCE
+                && Math.abs(height - PDRectangle.A4.getHeight()) < A4_TOLERANCE;
+    }
+
+    /**
+     * @param text      is the text of one label
+     * @param pageIndex is the zero based page the label is on
+     * @param quadrant  is where the label is on the page
+     * @return the label, or null if there is no shipping address in the text. The tracking number is blank if there is no postage
+     */
+    static ShippingLabel parse(String text, int pageIndex, int quadrant) {
+        List<String> lines = new ArrayList<>();
+        for (String line : LINE_ENDING.split(text)) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim());
+            }
+        }
+        int shippingAddress = indexOf(lines, "Shipping Address");
+        if (shippingAddress < 0) {
+            return null;
+        }
+        String name = line(lines, shippingAddress + 1);
+        int addressStart = shippingAddress + 2;
+        int addressEnd = addressStart + ADDRESS_LINES;
+        for (int i = addressStart; i < Math.min(addressStart + MAX_ADDRESS_LINES, lines.size()); i++) {
+            if (lines.get(i).contains("Postage Paid GB")) {
+                break;
+            }
+            if (POSTCODE.matcher(lines.get(i)).find()) {
+                addressEnd = i + 1;
+                break;
+            }
+        }
+        StringBuilder address = new StringBuilder();
+        for (int i = addressStart; i < addressEnd; i++) {
+            address.append(i > addressStart ? " " : "").append(line(lines, i));
+        }
+        ShippingLabel label = new ShippingLabel(name, address.toString(), pageIndex, quadrant);
+
+        int postagePaid = indexOf(lines, "Postage Paid GB");
+        if (postagePaid >= 0) {
+            String service = line(lines, postagePaid - 2);
+            if (service.startsWith("Tracked")) {
+                service = service.replace("No Signature", "");
+            }
+            String trackingNumber = line(lines, postagePaid + 3);
+            for (int i = postagePaid + 1; i < lines.size(); i++) {
+                if (TRACKING_NUMBER.matcher(lines.get(i)).find()) {
+                    trackingNumber = lines.get(i);
+                    break;
+                }
+            }
+            label.SetTrackingNumber(service + " " + trackingNumber.replace(" ", "").replace("-", ""));
+        } else {
+            // Still listed on the proof of postage, so the parcel is not missed, but with its service left blank
+            System.out.println("No postage found on the label for " + name + ", leaving its tracking number blank");
+            label.SetTrackingNumber("");
+        }
+        return label;
+    }
+
+    private static int indexOf(List<String> lines, String find) {
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).contains(find)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // A line of the label, or empty if the label runs off the end of its region
+    private static String line(List<String> lines, int index) {
+        return index >= 0 && index < lines.size() ? lines.get(index) : "";
+    }
+}
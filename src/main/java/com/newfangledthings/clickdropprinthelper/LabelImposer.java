@@ -0,0 +1,187 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.multipdf.LayerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays the labels of an order out again to suit the printer, such as one label to a page for a 6x4 thermal printer.
+ * <p>
+ * Each page of labels is imported once as a form XObject, and each label on it becomes a small form that only
+ * shows its quarter of the page. These are drawn scaled into place, so the labels stay vector and the content
+ * of a page is only in the pdf once however many labels it holds.
+ */
+public class LabelImposer {
+
+    /**
+     * The pages the labels can be laid out on
+     */
+    public enum Layout {
+        ORIGINAL("original", PDRectangle.A4, 1, 1),
+        THERMAL_6X4("6x4", new PDRectangle(4 * 72, 6 * 72), 1, 1),
+        TWO_UP("2-up", new PDRectangle(PDRectangle.A4.getWidth(), PDRectangle.A4.getHeight() / 2), 2, 1),
+        FOUR_UP("4-up", PDRectangle.A4, 2, 2);
+
+        private final String configName;
+        private final PDRectangle pageSize;
+        private final int columns;
+        private final int rows;
+
+        Layout(String configName, PDRectangle pageSize, int columns, int rows) {
+            this.configName = configName;
+            this.pageSize = pageSize;
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        /**
+         * @param value is the LabelLayout setting
+         * @return the layout, the original pages if it is blank
+         */
+        public static Layout fromConfig(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return ORIGINAL;
+            }
+            for (Layout layout : values()) {
+                if (layout.configName.equalsIgnoreCase(value.trim())) {
+                    return layout;
+                }
+            }
+            throw new IllegalArgumentException("Unknown LabelLayout '" + value + "', it can be original, 6x4, 2-up or 4-up");
+        }
+
+        @Override
+        public String toString() {
+            return configName;
+        }
+    }
+
+    private final Layout layout;
+
+    public LabelImposer(Layout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Add the labels of the orders to the document, laid out on pages of this layout. Any page that is not
+     * 4 labels on A4, such as a customs form, is placed whole in the next space
+     *
+     * @param orderDocuments is the loaded Click & Drop pdfs
+     * @param target         is the labels pdf to add the pages to
+     * @return the number of labels placed
+     */
+    public int impose(List<OrderDocument> orderDocuments, PDDocument target) throws IOException {
+        LayerUtility layerUtility = new LayerUtility(target);
+        List<PDFormXObject> labels = new ArrayList<>();
+        for (OrderDocument orderDocument : orderDocuments) {
+            for (int pageIndex = 0; pageIndex < orderDocument.getNumberOfPages(); pageIndex++) {
+                PageType pageType = orderDocument.getPageType(pageIndex);
+                if (pageType == PageType.PACKING_SLIP) {
+                    continue;
+                }
+                PDFormXObject page = layerUtility.importPageAsForm(orderDocument.getDocument(), pageIndex);
+                PDRectangle box = getDisplayBox(page);
+                List<ShippingLabel> pageLabels = orderDocument.getLabels(pageIndex);
+                if (pageType == PageType.LABEL && LabelExtractor.isA4(box.getWidth(), box.getHeight()) && !pageLabels.isEmpty()) {
+                    // Only the quarters that were read as a label, so an empty quarter is not printed
+                    for (ShippingLabel label : pageLabels) {
+                        labels.add(createRegion(target, page, getQuadrant(box, label.getQuadrant())));
+                    }
+                } else {
+                    labels.add(createRegion(target, page, box));
+                }
+            }
+        }
+
+        int perPage = layout.columns * layout.rows;
+        PDPageContentStream contents = null;
+        try {
+            for (int i = 0; i < labels.size(); i++) {
+                if (i % perPage == 0) {
+                    if (contents != null) {
+                        contents.close();
+                    }
+                    PDPage outputPage = new PDPage(layout.pageSize);
+                    target.addPage(outputPage);
+                    contents = new PDPageContentStream(target, outputPage);
+                }
+                place(contents, labels.get(i), getCell(i % perPage));
+            }
+        } finally {
+            if (contents != null) {
+                contents.close();
+            }
+        }
+        return labels.size();
+    }
+
+    /**
+     * @return the area of the page as it is shown, which is the form's bounding box turned by any page rotation
+     */
+    private static PDRectangle getDisplayBox(PDFormXObject page) {
+        Rectangle2D bounds = page.getBBox().transform(page.getMatrix()).getBounds2D();
+        return new PDRectangle((float) bounds.getX(), (float) bounds.getY(), (float) bounds.getWidth(), (float) bounds.getHeight());
+    }
+
+    /**
+     * @param quadrant is 0 to 3, from the top left across then down
+     */
+    private static PDRectangle getQuadrant(PDRectangle box, int quadrant) {
+        float width = box.getWidth() / 2;
+        float height = box.getHeight() / 2;
+        return new PDRectangle(box.getLowerLeftX() + (quadrant % 2) * width,
+                box.getUpperRightY() - (quadrant / 2 + 1) * height, width, height);
+    }
+
+    /**
+     * @param cell is the index of the space on the output page, from the top left across then down
+     */
+    private PDRectangle getCell(int cell) {
+        float width = layout.pageSize.getWidth() / layout.columns;
+        float height = layout.pageSize.getHeight() / layout.rows;
+        return new PDRectangle((cell % layout.columns) * width,
+                layout.pageSize.getHeight() - (cell / layout.columns + 1) * height, width, height);
+    }
+
+    /**
+     * A form that draws the page but is clipped by its bounding box to just one region of it
+     */
+    private static PDFormXObject createRegion(PDDocument target, PDFormXObject page, PDRectangle region) throws IOException {
+        PDFormXObject form = new PDFormXObject(target);
+        form.setBBox(region);
+        form.setResources(new PDResources());
+        try (PDPageContentStream contents = new PDPageContentStream(target, form, form.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+            contents.drawForm(page);
+        }
+        return form;
+    }
+
+    /**
+     * Draw the region scaled to fit the cell, keeping its shape and centring it
+     */
+    private static void place(PDPageContentStream contents, PDFormXObject region, PDRectangle cell) throws IOException {
+        PDRectangle box = region.getBBox();
+        float scale = Math.min(cell.getWidth() / box.getWidth(), cell.getHeight() / box.getHeight());
+        AffineTransform transform = AffineTransform.getTranslateInstance(
+                cell.getLowerLeftX() + (cell.getWidth() - box.getWidth() * scale) / 2,
+                cell.getLowerLeftY() + (cell.getHeight() - box.getHeight() * scale) / 2);
+        transform.scale(scale, scale);
+        transform.translate(-box.getLowerLeftX(), -box.getLowerLeftY());
+        contents.saveGraphicsState();
+        contents.transform(new Matrix(transform));
+        contents.drawForm(region);
+        contents.restoreGraphicsState();
+    }
+}
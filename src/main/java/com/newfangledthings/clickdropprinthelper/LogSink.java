@@ -0,0 +1,222 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where System.out and System.err go when running in the system tray.
+ * <p>
+ * Writing only adds the bytes to a queue, so a thread printing never waits on Swing. The queue is
+ * emptied on a fixed cadence, appended to the text area on the event dispatch thread in one go and
+ * the oldest lines are dropped once the text area is full. It can also write to a rolling log file.
+ */
+public class LogSink extends OutputStream {
+    private static final long FLUSH_INTERVAL_MILLIS = 100;
+    // Past this much unwritten output new output is dropped rather than using more memory
+    private static final long MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    private static final int LOG_FILE_BACKUPS = 3;
+
+    private final JTextArea textArea;
+    private final int maxCharacters;
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // Bytes of a character split across two writes, kept for the next flush
+    private ByteBuffer leftover = ByteBuffer.allocate(0);
+    private final ScheduledExecutorService flusher;
+    // Only used on the flusher thread
+    private Path logFile;
+    private long maxLogFileBytes;
+    private Writer logWriter;
+    private long logFileBytes;
+
+    /**
+     * @param textArea      is where to show the output
+     * @param maxCharacters is how much output to keep in the text area
+     */
+    public LogSink(JTextArea textArea, int maxCharacters) {
+        this.textArea = textArea;
+        this.maxCharacters = maxCharacters;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(WorkerPool.createThreadFactory("log"));
+        flusher.scheduleWithFixedDelay(this::drain, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Also write the output to a file, which is renamed to .1 (then .2 and so on) once it reaches the maximum size
+     *
+     * @param filename     is the log file to write to
+     * @param maxSizeBytes is how big the file can get before it is rolled over
+     */
+    public void setLogFile(String filename, long maxSizeBytes) {
+        flusher.execute(() -> {
+            closeLogFile();
+            logFile = Paths.get(filename);
+            maxLogFileBytes = Math.max(1024, maxSizeBytes);
+        });
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (len <= 0) {
+            return;
+        }
+        if (pendingBytes.addAndGet(len) > MAX_PENDING_BYTES) {
+            pendingBytes.addAndGet(-len);
+            droppedBytes.addAndGet(len);
+            return;
+        }
+        byte[] copy = new byte[len];
+        System.arraycopy(b, off, copy, 0, len);
+        pending.add(copy);
+    }
+
+    /**
+     * Runs on the flusher thread, turning everything written since the last time into text
+     */
+    private void drain() {
+        try {
+            String text = takePending();
+            if (text.isEmpty()) {
+                return;
+            }
+            writeLogFile(text);
+            SwingUtilities.invokeLater(() -> append(text));
+        } catch (RuntimeException e) {
+            // Printing the error would only come back here, so carry on with the next flush
+        }
+    }
+
+    private String takePending() {
+        List<byte[]> chunks = new ArrayList<>();
+        int taken = 0;
+        byte[] chunk;
+        while ((chunk = pending.poll()) != null) {
+            chunks.add(chunk);
+            taken += chunk.length;
+        }
+        pendingBytes.addAndGet(-taken);
+        long dropped = droppedBytes.getAndSet(0);
+        if (chunks.isEmpty() && dropped == 0) {
+            return "";
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(leftover.remaining() + taken);
+        bytes.put(leftover);
+        for (byte[] c : chunks) {
+            bytes.put(c);
+        }
+        bytes.flip();
+        CharBuffer chars = CharBuffer.allocate((int) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+        decoder.decode(bytes, chars, false);
+        leftover = ByteBuffer.allocate(bytes.remaining()).put(bytes);
+        leftover.flip();
+        chars.flip();
+        String text = chars.toString();
+        if (dropped > 0) {
+            text += System.lineSeparator() + "[" + dropped + " bytes of output dropped]" + System.lineSeparator();
+        }
+        return text;
+    }
+
+    /**
+     * Runs on the event dispatch thread, adding the text and dropping whole lines from the start once it is too long
+     */
+    private void append(String text) {
+        textArea.append(text);
+        int length = textArea.getDocument().getLength();
+        if (length > maxCharacters) {
+            try {
+                int line = textArea.getLineOfOffset(length - maxCharacters);
+                textArea.replaceRange("", 0, textArea.getLineEndOffset(line));
+            } catch (BadLocationException e) {
+                textArea.setText("");
+            }
+        }
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+    }
+
+    private void writeLogFile(String text) {
+        if (logFile == null) {
+            return;
+        }
+        try {
+            if (logWriter == null) {
+                logWriter = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                logFileBytes = Files.size(logFile);
+            }
+            long textBytes = text.getBytes(StandardCharsets.UTF_8).length;
+            if (logFileBytes > 0 && logFileBytes + textBytes > maxLogFileBytes) {
+                rollLogFile();
+                logWriter = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                logFileBytes = 0;
+            }
+            logWriter.write(text);
+            logWriter.flush();
+            logFileBytes += textBytes;
+        } catch (IOException e) {
+            // Stop writing to the file rather than fill the window with the same error
+            String error = "Error writing log file " + logFile + ": " + e.getMessage() + System.lineSeparator();
+            SwingUtilities.invokeLater(() -> append(error));
+            closeLogFile();
+            logFile = null;
+        }
+    }
+
+    private void rollLogFile() throws IOException {
+        closeLogFile();
+        for (int backup = LOG_FILE_BACKUPS - 1; backup >= 1; backup--) {
+            Path from = logFile.resolveSibling(logFile.getFileName() + "." + backup);
+            if (Files.exists(from)) {
+                Files.move(from, logFile.resolveSibling(logFile.getFileName() + "." + (backup + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(logFile, logFile.resolveSibling(logFile.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void closeLogFile() {
+        if (logWriter != null) {
+            try {
+                logWriter.close();
+            } catch (IOException e) {
+                // Nothing more can be done with it
+            }
+            logWriter = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.execute(this::drain);
+        flusher.execute(this::closeLogFile);
+        flusher.shutdown();
+    }
+}
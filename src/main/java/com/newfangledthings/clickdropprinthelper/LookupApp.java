@@ -0,0 +1,79 @@
+// LookupApp.java
+package com.newfangledthings.clickdropprinthelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds which pdfs a parcel ended up in, from the parcel index of every profile, by tracking number or by
+ * the start of the recipient's name or postcode.
+ * <p>
+ * Exit status is 0 when a parcel was found, 1 for bad arguments and 2 when nothing was found, including when
+ * no order has been processed yet so there is no parcel index.
+ */
+public class LookupApp {
+    private static final int EXIT_FOUND = 0;
+    private static final int EXIT_USAGE = 1;
+    private static final int EXIT_NOT_FOUND = 2;
+
+    public static void main(String[] args) {
+        String configName = "config.properties";
+        List<String> query = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--config") && i + 1 < args.length) {
+                configName = args[++i];
+            } else {
+                query.add(args[i]);
+            }
+        }
+        if (query.isEmpty()) {
+            System.err.println("Usage: LookupApp [--config config.properties] <tracking number, name or postcode>");
+            System.exit(EXIT_USAGE);
+        }
+        // Config would create a default file and exit successfully, which is no use here
+        if (!new File(configName).exists()) {
+            System.err.println("Config file " + configName + " not found");
+            System.exit(EXIT_USAGE);
+        }
+        Config config = new Config(configName);
+
+        // Profiles with the same store folder share an index, so each one is only searched once
+        Set<Path> indexFiles = new LinkedHashSet<>();
+        for (Settings settings : config.getProfiles()) {
+            indexFiles.add(ParcelIndex.locate(settings));
+        }
+        try {
+            List<ParcelIndex.Parcel> parcels = new ArrayList<>();
+            int indexesRead = 0;
+            for (Path indexFile : indexFiles) {
+                // Only searched, so a lookup never creates an index or holds one open that the app is adding to
+                try {
+                    parcels.addAll(ParcelIndex.search(indexFile, String.join(" ", query)));
+                    indexesRead++;
+                } catch (NoSuchFileException e) {
+                    System.err.println("Parcel index " + indexFile + " not found, no orders have been processed with it yet");
+                }
+            }
+            if (indexesRead == 0) {
+                System.exit(EXIT_NOT_FOUND);
+            }
+            for (ParcelIndex.Parcel parcel : parcels) {
+                System.out.println(parcel);
+            }
+            if (parcels.isEmpty()) {
+                System.out.println("No parcels found for " + String.join(" ", query));
+                System.exit(EXIT_NOT_FOUND);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read the parcel index: " + e.getMessage());
+            System.exit(EXIT_USAGE);
+        }
+        System.exit(EXIT_FOUND);
+    }
+}
@@ -0,0 +1,41 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+/**
+ * How much memory PDFBox can use for each pdf that is loaded or created.
+ * <p>
+ * By default everything is kept in memory. Setting MaxMainMemoryMB limits each pdf to that much
+ * memory and anything over it goes to a scratch file in the temp folder, so very large exports
+ * do not run the application out of memory.
+ */
+public class MemorySettings {
+
+    private MemorySettings() {
+    }
+
+    /**
+     * @param settings is the settings with the optional MaxMainMemoryMB setting
+     * @return the memory setting to load and create pdfs with
+     */
+    public static MemoryUsageSetting create(Settings settings) {
+        Long maxMainMemoryMB = settings.getMaxMainMemoryMB();
+        if (maxMainMemoryMB == null) {
+            return MemoryUsageSetting.setupMainMemoryOnly();
+        }
+        if (maxMainMemoryMB <= 0) {
+            return MemoryUsageSetting.setupTempFileOnly();
+        }
+        return MemoryUsageSetting.setupMixed(maxMainMemoryMB * 1024 * 1024);
+    }
+
+    public static String describe(MemoryUsageSetting memoryUsageSetting) {
+        if (memoryUsageSetting.useMainMemory() && !memoryUsageSetting.useTempFile()) {
+            return "main memory only";
+        }
+        if (!memoryUsageSetting.useMainMemory()) {
+            return "a scratch file only";
+        }
+        return "up to " + memoryUsageSetting.getMaxMainMemoryBytes() / (1024 * 1024) + "MB of memory and then a scratch file";
+    }
+}
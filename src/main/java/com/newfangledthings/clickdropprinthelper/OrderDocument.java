@@ -0,0 +1,173 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * A Click & Drop order pdf that has been loaded and parsed once, so the proof of postage,
+ * QR page, packing slips and labels can all be created from the same document.
+ */
+public class OrderDocument implements Closeable {
+    private final String filename;
+    private final PDDocument document;
+    private final List<List<ShippingLabel>> pageLabels;
+    private final List<PageType> pageTypes;
+    private final List<PDImageXObject> images;
+    private final List<PDImageXObject> qrCodes;
+    // QR codes cut out of the label images, keyed by the source image so each one is only cropped once
+    private final Map<COSBase, CompletableFuture<BufferedImage>> croppedQRCodes = new ConcurrentHashMap<>();
+
+    // Regex pattern to match "Shipping Address" on the first or second line followed by an empty line
+    private static final Pattern PACKING_SLIP_PATTERN = Pattern.compile("(?i)^(.*\\r?\\n)?Shipping Address");
+
+    private OrderDocument(String filename, PDDocument document, List<List<ShippingLabel>> pageLabels, List<PageType> pageTypes, List<PDImageXObject> images) {
+        this.filename = filename;
+        this.document = document;
+        this.pageLabels = pageLabels;
+        this.pageTypes = pageTypes;
+        this.images = images;
+        // The QR codes are either small 128 wide images or part of the 1050 wide label image
+        List<PDImageXObject> qrCodes = new ArrayList<>();
+        for (PDImageXObject image : images) {
+            if (image.getWidth() == 128 || image.getWidth() == 1050) {
+                qrCodes.add(image);
+            }
+        }
+        this.qrCodes = Collections.unmodifiableList(qrCodes);
+    }
+
+    /**
+     * Load the order pdf, then extract the text of each page, classify it as a label or
+     * packing slip and collect its image resources in a single pass over the pages
+     *
+     * @param file               is the Click & Drop pdf to load
+     * @param memoryUsageSetting is how much memory the loaded pdf can use before it uses a scratch file
+     * @return the parsed order document, which must be closed once all outputs are created
+     */
+    public static OrderDocument load(File file, MemoryUsageSetting memoryUsageSetting) throws IOException {
+        PDDocument document = PDDocument.load(file, memoryUsageSetting);
+        try {
+            LabelExtractor labelExtractor = new LabelExtractor();
+            List<List<ShippingLabel>> pageLabels = new ArrayList<>();
+            List<PageType> pageTypes = new ArrayList<>();
+            List<PDImageXObject> images = new ArrayList<>();
+            int pageIndex = 0;
+            for (PDPage page : document.getPages()) {
+                // Only the labels are kept, so the text of the whole document is never held at once
+                LabelExtractor.PageText pageText = labelExtractor.extract(page, pageIndex++);
+                PageType pageType = classify(pageText.getText());
+                pageTypes.add(pageType);
+                pageLabels.add(pageType == PageType.LABEL
+                        ? Collections.unmodifiableList(pageText.getLabels()) : Collections.emptyList());
+
+                PDResources pdResources = page.getResources();
+                for (COSName c : pdResources.getXObjectNames()) {
+                    PDXObject o = pdResources.getXObject(c);
+                    if (o instanceof PDImageXObject) {
+                        images.add((PDImageXObject) o);
+                    }
+                }
+            }
+            return new OrderDocument(file.getName(), document,
+                    Collections.unmodifiableList(pageLabels),
+                    Collections.unmodifiableList(pageTypes),
+                    Collections.unmodifiableList(images));
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+    }
+
+    private static PageType classify(String pageText) {
+        String trimmed = pageText.trim();
+        if (PACKING_SLIP_PATTERN.matcher(trimmed).find()) {
+            return PageType.PACKING_SLIP;
+        }
+        if (trimmed.contains("Shipping Address") || trimmed.contains("Postage Paid GB")) {
+            return PageType.LABEL;
+        }
+        return PageType.OTHER;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public PDDocument getDocument() {
+        return document;
+    }
+
+    public int getNumberOfPages() {
+        return pageTypes.size();
+    }
+
+    /**
+     * @param pageIndex is the zero based page index
+     * @return the shipping labels on the page in reading order, empty if it is not a page of labels
+     */
+    public List<ShippingLabel> getLabels(int pageIndex) {
+        return pageLabels.get(pageIndex);
+    }
+
+    /**
+     * @param pageIndex is the zero based page index
+     * @return what the page contains
+     */
+    public PageType getPageType(int pageIndex) {
+        return pageTypes.get(pageIndex);
+    }
+
+    /**
+     * @return true if any page is a shipping label, so this looks like a Click & Drop order
+     */
+    public boolean hasLabels() {
+        return pageTypes.contains(PageType.LABEL);
+    }
+
+    /**
+     * @return every image XObject in the order, in page order
+     */
+    public List<PDImageXObject> getImages() {
+        return images;
+    }
+
+    /**
+     * @return the images that hold a label's QR code, in the same order as the labels
+     */
+    public List<PDImageXObject> getQRCodes() {
+        return qrCodes;
+    }
+
+    /**
+     * @param image   is a QR code image from this order
+     * @param cropper starts cropping the image if it has not been cropped already, on the calling thread
+     * @return the pixels of the cropped QR code
+     */
+    public CompletableFuture<BufferedImage> getCroppedQRCode(PDImageXObject image, Function<PDImageXObject, CompletableFuture<BufferedImage>> cropper) {
+        return croppedQRCodes.computeIfAbsent(image.getCOSObject(), key -> cropper.apply(image));
+    }
+
+    @Override
+    public void close() throws IOException {
+        document.close();
+    }
+}
@@ -0,0 +1,351 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the proof of postage, QR page, packing slips and labels for an order pdf, or for several that
+ * arrived together, as set in the config.
+ * It does not prompt, beep or open anything, so it is used both by the folder watcher and the batch mode.
+ * Each run uses the settings from when it started, even if the config is reloaded part way through.
+ * Every profile shares the one OrderProcessor, and profiles with the same store folder share its ledger
+ * and parcel index.
+ */
+public class OrderProcessor implements Closeable {
+    /**
+     * Told about each pdf once it has been saved
+     */
+    public interface OutputListener {
+        /**
+         * @param filename   is the full path the pdf was saved to
+         * @param outputType is what the pdf contains
+         */
+        void created(String filename, OutputType outputType);
+    }
+
+    private final Config config;
+    private final ProofOfPostageCreator proofOfPostageCreator;
+    // Opened the first time a profile uses them, keyed by where the file is
+    private final Map<Path, ProcessingLedger> ledgers = new HashMap<>();
+    private final Map<Path, ParcelIndex> parcelIndexes = new LinkedHashMap<>();
+    private final ProcessingMetrics metrics = ProcessingMetrics.get();
+
+    public OrderProcessor(Config config) {
+        this.config = config;
+        this.proofOfPostageCreator = new ProofOfPostageCreator(config);
+        // Open them all now, so a ledger or index that cannot be read stops the app straight away
+        for (Settings settings : config.getProfiles()) {
+            try {
+                getLedger(settings);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open the ledger of processed orders: " + e.getMessage(), e);
+            }
+            try {
+                getParcelIndex(settings);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open the parcel index: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private synchronized ProcessingLedger getLedger(Settings settings) throws IOException {
+        Path ledgerFile = ProcessingLedger.locate(settings);
+        ProcessingLedger ledger = ledgers.get(ledgerFile);
+        if (ledger == null) {
+            ledger = ProcessingLedger.open(ledgerFile);
+            ledgers.put(ledgerFile, ledger);
+        }
+        return ledger;
+    }
+
+    private synchronized ParcelIndex getParcelIndex(Settings settings) throws IOException {
+        Path indexFile = ParcelIndex.locate(settings);
+        ParcelIndex parcelIndex = parcelIndexes.get(indexFile);
+        if (parcelIndex == null) {
+            parcelIndex = ParcelIndex.open(indexFile);
+            parcelIndexes.put(indexFile, parcelIndex);
+        }
+        return parcelIndex;
+    }
+
+    public void printSettings() {
+        printSettings(config.getSettings());
+    }
+
+    /**
+     * @param settings is the settings of the profile to print
+     */
+    public void printSettings(Settings settings) {
+        ProcessingLedger ledger;
+        ParcelIndex parcelIndex;
+        try {
+            ledger = getLedger(settings);
+            parcelIndex = getParcelIndex(settings);
+        } catch (IOException e) {
+            System.err.println("Unable to open the ledger or parcel index for " + settings.getProfileName() + ": " + e.getMessage());
+            return;
+        }
+        System.out.println("Will " + (settings.isCreateProofOfPostage() ? "" : "NOT ") + "create proof of postage pdf");
+        System.out.println("Will " + (settings.isCreateQRs() ? "" : "NOT ") + "create additional QR page");
+        System.out.println("Will " + (settings.isCreatePackingSlips() ? "" : "NOT ") + "create packing slips pdf");
+        System.out.println("Will " + (settings.isCreateLabels() ? "" : "NOT ") + "create labels pdf");
+        if (settings.isCreateLabels() && settings.getLabelLayout() != LabelImposer.Layout.ORIGINAL) {
+            System.out.println("Labels will be laid out " + settings.getLabelLayout());
+        }
+        System.out.println("Created pdf's will be stored in folder " + settings.getStoreFolder());
+        System.out.println("Each pdf will use " + MemorySettings.describe(MemorySettings.create(settings)));
+        System.out.println("Processed orders are recorded in " + ledger.getLedgerFile()
+                + (settings.isSkipDuplicates() ? ", and any downloaded again will be skipped" : ""));
+        System.out.println("Parcels can be found by tracking number, name or postcode in " + parcelIndex.getIndexFile());
+    }
+
+    /**
+     * @return the indexes of every parcel processed, one for each different store folder, to find which pdfs it is in
+     */
+    public synchronized List<ParcelIndex> getParcelIndexes() {
+        return new ArrayList<>(parcelIndexes.values());
+    }
+
+    /**
+     * @param settings is the settings of the profile
+     * @return the order files that were being processed when the app last stopped, each list being one run
+     */
+    public List<List<File>> getUnfinished(Settings settings) throws IOException {
+        List<List<File>> unfinished = new ArrayList<>();
+        for (ProcessingLedger.Run run : getLedger(settings).getUnfinished()) {
+            List<File> files = new ArrayList<>();
+            for (Path path : run.getFiles()) {
+                if (Files.exists(path)) {
+                    files.add(path.toFile());
+                }
+            }
+            if (!files.isEmpty()) {
+                unfinished.add(files);
+            }
+        }
+        return unfinished;
+    }
+
+    /**
+     * @param file    is the Click & Drop order pdf
+     * @param created is told about each pdf once it has been saved
+     * @return false if the file is not a Click & Drop order
+     */
+    public boolean process(File file, OutputListener created) throws IOException {
+        return process(List.of(file), created);
+    }
+
+    /**
+     * Process orders that arrived together as one run. Their labels fill the proofs of postage one after
+     * another, and there is one packing slips pdf and one labels pdf for all of them
+     *
+     * @param files   is the Click & Drop order pdfs, in the order they arrived
+     * @param created is told about each pdf once it has been saved
+     * @return false if none of the files are Click & Drop orders
+     */
+    public boolean process(List<File> files, OutputListener created) throws IOException {
+        return process(config.getSettings(), files, created);
+    }
+
+    /**
+     * @param settings is the settings to process the files with, from start to finish
+     * @param files    is the Click & Drop order pdfs, in the order they arrived
+     * @param created  is told about each pdf once it has been saved
+     * @return false if none of the files are Click & Drop orders
+     */
+    public boolean process(Settings settings, List<File> files, OutputListener created) throws IOException {
+        long started = System.nanoTime();
+        ProcessingLedger ledger = getLedger(settings);
+        List<String> hashes = new ArrayList<>();
+        for (File file : files) {
+            hashes.add(ProcessingLedger.hash(file));
+        }
+        List<File> newFiles = new ArrayList<>();
+        List<String> fileHashes = new ArrayList<>();
+        ProcessingLedger.Run run;
+        // Checked and started under the ledger's lock, so a copy of a file arriving at the same time is skipped
+        synchronized (ledger) {
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                String fileHash = hashes.get(i);
+                if (settings.isSkipDuplicates()) {
+                    ProcessingLedger.Run previous = ledger.findFinished(fileHash);
+                    if (previous != null) {
+                        System.out.println("Skipping " + file.getName() + " as it was already processed at " + previous.getFinished());
+                        continue;
+                    }
+                    ProcessingLedger.Run running = ledger.findInProgress(fileHash);
+                    if (running != null) {
+                        System.out.println("Skipping " + file.getName() + " as the same file is being processed now as " + running.getFiles().get(0).getFileName());
+                        continue;
+                    }
+                    if (fileHashes.contains(fileHash)) {
+                        System.out.println("Skipping " + file.getName() + " as it is the same as " + newFiles.get(fileHashes.indexOf(fileHash)).getName());
+                        continue;
+                    }
+                }
+                newFiles.add(file);
+                fileHashes.add(fileHash);
+            }
+            if (newFiles.isEmpty()) {
+                return true;
+            }
+            run = ledger.start(newFiles, fileHashes);
+        }
+        // Only the files that are processed are counted and timed, not the ones skipped above
+        try {
+            boolean recognised;
+            try {
+                recognised = processOrders(settings, newFiles, run, created);
+            } catch (IOException | RuntimeException e) {
+                // Recorded as failed, so it is not carried on with every time the app starts
+                try {
+                    ledger.failed(run, e.getMessage());
+                } catch (IOException ledgerError) {
+                    e.addSuppressed(ledgerError);
+                }
+                throw e;
+            }
+            ledger.finished(run);
+            return recognised;
+        } finally {
+            for (int i = 0; i < newFiles.size(); i++) {
+                metrics.fileProcessed();
+            }
+            metrics.time(ProcessingMetrics.Stage.FILE, started);
+        }
+    }
+
+    private boolean processOrders(Settings settings, List<File> files, ProcessingLedger.Run run, OutputListener created) throws IOException {
+        // A combined run is named after its first file, so the created pdfs still sort with it
+        String filename = files.size() == 1 ? files.get(0).getName()
+                : files.get(0).getName().replaceFirst("\\.pdf$", "") + "-and-" + (files.size() - 1) + "-more.pdf";
+        boolean deleteSource = !settings.isCreateProofOfPostage() && !settings.isCreateQRs();
+        MemoryUsageSetting memoryUsageSetting = MemorySettings.create(settings);
+        List<File> processed = new ArrayList<>();
+        List<OrderDocument> orderDocuments = new ArrayList<>();
+        try {
+            for (File file : files) {
+                long loadStarted = System.nanoTime();
+                OrderDocument orderDocument = OrderDocument.load(file, memoryUsageSetting);
+                metrics.time(ProcessingMetrics.Stage.LOAD, loadStarted);
+                metrics.addPages(orderDocument.getNumberOfPages());
+                if (files.size() > 1 && !orderDocument.hasLabels()) {
+                    // Leave it out, so its pages do not end up in the combined labels pdf
+                    System.out.println(file.getName() + " NOT recognised as Click & Drop file, leaving it out");
+                    orderDocument.close();
+                    continue;
+                }
+                orderDocuments.add(orderDocument);
+                processed.add(file);
+            }
+            if (orderDocuments.isEmpty()) {
+                System.out.println("NOT recognised as Click & Drop file, finished processing early");
+                return false;
+            }
+            if (run.isDone(OutputType.PROOF_OF_POSTAGE)) {
+                System.out.println("Proof of postage for " + filename + " was already created");
+                createPackingSlipsAndLabels(settings, orderDocuments, filename, run, created);
+            } else if (!createProofsOfPostage(settings, orderDocuments, filename, run, created)) {
+                return false;
+            }
+        } finally {
+            for (OrderDocument orderDocument : orderDocuments) {
+                orderDocument.close();
+            }
+        }
+        // The source pdfs can only be deleted once they have been closed
+        if (deleteSource) {
+            for (File file : processed) {
+                System.out.println("Deleting pdf " + file.getName());
+                Files.delete(file.toPath());
+            }
+        }
+        System.out.println("Finished processing file " + filename);
+        return true;
+    }
+
+    /**
+     * @return false if no postage details were found
+     */
+    private boolean createProofsOfPostage(Settings settings, List<OrderDocument> orderDocuments, String filename, ProcessingLedger.Run run, OutputListener created) throws IOException {
+        var proofOfPostages = proofOfPostageCreator.createProofOfPostage(settings, orderDocuments, filename);
+        if (proofOfPostages == null) {
+            System.out.println("NOT recognised as Click & Drop file, finished processing early");
+            return false;
+        }
+        try {
+            List<String> proofFilenames = new ArrayList<>();
+            for (ProofOfPostage proofOfPostage : proofOfPostages) {
+                if (settings.isCreateQRs()) {
+                    proofOfPostageCreator.addQRCodesToProofOfPostage(proofOfPostage);
+                }
+                if (!settings.isCreateProofOfPostage() && settings.isCreateQRs()) {
+                    proofOfPostageCreator.removeFirstPage(proofOfPostage);
+                    System.out.println("Removed proof of postage page from " + filename);
+                }
+                // The proof of postage is kept in memory until here, so it is only written once
+                proofOfPostageCreator.saveProofOfPostage(settings, proofOfPostage);
+                getParcelIndex(settings).add(proofOfPostage);
+                created.created(settings.getStoreFolder() + File.separator + proofOfPostage.getFilename(), OutputType.PROOF_OF_POSTAGE);
+                proofFilenames.add(proofOfPostage.getFilename());
+
+                if (proofOfPostage.getImageIndex() == 0) {
+                    createPackingSlipsAndLabels(settings, orderDocuments, filename, run, created);
+                }
+            }
+            getLedger(settings).stageDone(run, OutputType.PROOF_OF_POSTAGE, proofFilenames);
+        } finally {
+            // Anything not saved because of an error still needs closing
+            for (ProofOfPostage proofOfPostage : proofOfPostages) {
+                proofOfPostage.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create whichever of the packing slips and labels are turned on and were not created by an earlier attempt
+     */
+    private void createPackingSlipsAndLabels(Settings settings, List<OrderDocument> orderDocuments, String filename, ProcessingLedger.Run run, OutputListener created) throws IOException {
+        String storeFolder = settings.getStoreFolder();
+        if (settings.isCreatePackingSlips() && !run.isDone(OutputType.PACKING_SLIPS)) {
+            var packingFilename = FilenameGenerator.generateFilename(filename, "packing");
+            proofOfPostageCreator.createPackingSlips(settings, orderDocuments, packingFilename);
+            created.created(storeFolder + File.separator + packingFilename, OutputType.PACKING_SLIPS);
+            getLedger(settings).stageDone(run, OutputType.PACKING_SLIPS, List.of(packingFilename));
+            System.out.println("Created packing slips pdf " + packingFilename);
+        }
+        if (settings.isCreateLabels() && !run.isDone(OutputType.LABELS)) {
+            var labelsFilename = FilenameGenerator.generateFilename(filename, "labels", "pdf");
+            proofOfPostageCreator.createLabels(settings, orderDocuments, labelsFilename);
+            created.created(storeFolder + File.separator + labelsFilename, OutputType.LABELS);
+            getLedger(settings).stageDone(run, OutputType.LABELS, List.of(labelsFilename));
+            System.out.println("Created labels pdf " + labelsFilename);
+        }
+    }
+
+    /**
+     * Stop the workers used to create the pdfs and close the ledgers and parcel indexes, once nothing is being processed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        proofOfPostageCreator.close();
+        for (ProcessingLedger ledger : ledgers.values()) {
+            ledger.close();
+        }
+        for (ParcelIndex parcelIndex : parcelIndexes.values()) {
+            parcelIndex.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.newfangledthings.clickdropprinthelper;
+
+/**
+ * The pdfs created from an order, each with its own viewer settings
+ */
+public enum OutputType {
+    PROOF_OF_POSTAGE("ProofOfPostage"),
+    PACKING_SLIPS("PackingSlip"),
+    LABELS("Labels");
+
+    private final String configName;
+
+    OutputType(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * @param print is true for the viewer that prints rather than the one that opens the pdf
+     * @return the config key of the viewer command for this output
+     */
+    public String getViewerKey(boolean print) {
+        return (print ? "ViewerExecutePrint" : "ViewerExecute") + configName;
+    }
+
+    /**
+     * @return the config key of the printer to print this output to without a viewer
+     */
+    public String getPrinterKey() {
+        return "Printer" + configName;
+    }
+}
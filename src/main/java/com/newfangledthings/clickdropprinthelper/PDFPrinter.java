@@ -0,0 +1,180 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.printing.PDFPageable;
+
+import javax.print.DocFlavor;
+import javax.print.PrintService;
+import javax.print.PrintServiceLookup;
+import javax.print.StreamPrintService;
+import javax.print.StreamPrintServiceFactory;
+import java.awt.print.PrinterException;
+import java.awt.print.PrinterJob;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the created pdfs in the app to a printer, rather than starting a viewer to print each one.
+ * <p>
+ * Each output type has its own printer setting, and when it is blank the print viewer command is used instead.
+ * Each output type also has its own print thread, so a slow printer never holds up processing, and the
+ * pages of two jobs never end up mixed on a printer.
+ * A printer of file:folder writes each job to a PostScript file in the folder and records it in print-jobs.log,
+ * so printing can be tried out without a printer.
+ */
+public class PDFPrinter implements Closeable {
+    private static final String FILE_PRINTER = "file:";
+    private static final String POSTSCRIPT = "application/postscript";
+
+    // Looking up the printers can be slow, especially with network printers, so they are only looked up again
+    // when a printer is not found, such as one added or renamed since the last look
+    private final Map<String, PrintService> printServices = new ConcurrentHashMap<>();
+    private final Map<OutputType, ExecutorService> printThreads = new EnumMap<>(OutputType.class);
+
+    public PDFPrinter() {
+        for (OutputType outputType : OutputType.values()) {
+            printThreads.put(outputType, Executors.newSingleThreadExecutor(
+                    WorkerPool.createThreadFactory("print-" + outputType.name().toLowerCase().replace('_', '-'))));
+        }
+    }
+
+    /**
+     * @param settings   is the settings the file is being processed with
+     * @param outputType is the type of pdf
+     * @return true if the pdf should be printed here rather than with a viewer command
+     */
+    public boolean hasPrinter(Settings settings, OutputType outputType) {
+        return !settings.getPrinter(outputType).isEmpty();
+    }
+
+    public boolean hasAnyPrinter(Settings settings) {
+        for (OutputType outputType : OutputType.values()) {
+            if (hasPrinter(settings, outputType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Print the pdf to the printer set for its output type, on the print thread for that type. The saved
+     * file is printed, as the created pdfs share pages and images with the order pdf, which is closed
+     * (and may be deleted) as soon as the order has been processed.
+     *
+     * @param settings   is the settings the file is being processed with
+     * @param outputType is the type of pdf
+     * @param filename   is where the pdf was saved
+     */
+    public void print(Settings settings, OutputType outputType, String filename) {
+        printThreads.get(outputType).execute(() -> printFile(settings, outputType, filename));
+    }
+
+    private void printFile(Settings settings, OutputType outputType, String filename) {
+        String printerName = settings.getPrinter(outputType);
+        String jobName = new File(filename).getName();
+        long started = System.nanoTime();
+        try (PDDocument document = PDDocument.load(new File(filename), MemorySettings.create(settings))) {
+            if (printerName.startsWith(FILE_PRINTER)) {
+                printToFile(document, Paths.get(printerName.substring(FILE_PRINTER.length())), outputType, jobName);
+            } else {
+                PrintService printService = findPrintService(printerName);
+                if (printService == null) {
+                    ProcessingMetrics.get().error();
+                    System.err.println("Printer '" + printerName + "' not found, not printing " + jobName);
+                    return;
+                }
+                try {
+                    print(document, printService, jobName);
+                } catch (PrinterException e) {
+                    // The printer may have been removed, so it is looked up again next time
+                    printServices.remove(printerName, printService);
+                    throw e;
+                }
+            }
+            ProcessingMetrics.get().time(ProcessingMetrics.Stage.PRINT, started);
+            System.out.println("Printed " + jobName + " on " + printerName);
+        } catch (PrinterException | IOException e) {
+            ProcessingMetrics.get().error();
+            System.err.println("Error printing " + jobName + ": " + e.getMessage());
+            e.printStackTrace(System.err);
+        }
+    }
+
+    private static void print(PDDocument document, PrintService printService, String jobName) throws PrinterException {
+        PrinterJob job = PrinterJob.getPrinterJob();
+        job.setPrintService(printService);
+        job.setJobName(jobName);
+        job.setPageable(new PDFPageable(document));
+        job.print();
+    }
+
+    private PrintService findPrintService(String printerName) {
+        PrintService printService = printServices.get(printerName);
+        if (printService != null) {
+            return printService;
+        }
+        // Not found, so look up every printer again, dropping any that have gone
+        Map<String, PrintService> found = new HashMap<>();
+        for (PrintService service : PrintServiceLookup.lookupPrintServices(null, null)) {
+            found.putIfAbsent(service.getName(), service);
+        }
+        printServices.keySet().retainAll(found.keySet());
+        printServices.putAll(found);
+        return printServices.get(printerName);
+    }
+
+    /**
+     * Stop taking print jobs, waiting up to a minute for the ones already waiting to be printed
+     */
+    @Override
+    public void close() {
+        for (ExecutorService printThread : printThreads.values()) {
+            printThread.shutdown();
+        }
+        try {
+            for (ExecutorService printThread : printThreads.values()) {
+                if (!printThread.awaitTermination(1, TimeUnit.MINUTES)) {
+                    System.err.println("Stopped waiting for print jobs to finish");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The stand-in printer, which prints through the same PrinterJob as a real printer but to a PostScript file
+     */
+    private static void printToFile(PDDocument document, Path folder, OutputType outputType, String jobName) throws PrinterException, IOException {
+        StreamPrintServiceFactory[] factories = StreamPrintServiceFactory.lookupStreamPrintServiceFactories(
+                DocFlavor.SERVICE_FORMATTED.PAGEABLE, POSTSCRIPT);
+        if (factories.length == 0) {
+            throw new PrinterException("No PostScript print service available");
+        }
+        Files.createDirectories(folder);
+        Path output = folder.resolve(jobName.replaceFirst("\\.pdf$", "") + ".ps");
+        try (OutputStream stream = Files.newOutputStream(output)) {
+            StreamPrintService printService = factories[0].getPrintService(stream);
+            print(document, printService, jobName);
+        }
+        String record = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "\t" + outputType + "\t"
+                + jobName + "\t" + document.getNumberOfPages() + " pages\t" + Files.size(output) + " bytes" + System.lineSeparator();
+        Files.write(folder.resolve("print-jobs.log"), record.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
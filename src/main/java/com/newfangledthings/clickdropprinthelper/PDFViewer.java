@@ -1,53 +1,39 @@
 // src/main/java/com/newfangledthings/clickdropprinthelper/PDFViewer.java
 package com.newfangledthings.clickdropprinthelper;
 
-import java.io.IOException;
-
 public class PDFViewer {
-    private final Config config;
+    private final ViewerDispatcher dispatcher;
 
     public PDFViewer(Config config) {
-        this.config = config;
+        this.dispatcher = new ViewerDispatcher(config.getSettings().getViewerThreads());
     }
 
     /**
-     * Open the PDF file with the viewer specified in the config
-     * file for the viewerExecute key and replace %filename% with
-     * the filename if it exists in the viewerExecute value
+     * Open the PDF file with the viewer set in the settings for
+     * the output type and replace %filename% with the filename
+     * if it exists in the viewer command.
+     * The viewer is run later by the dispatcher, after the viewer delay
      *
-     * @param filename      is the file to open
-     * @param viewerExecute is the viewer to use
+     * @param settings   is the settings the file is being processed with
+     * @param filename   is the file to open
+     * @param outputType is what the pdf contains
+     * @param print      is true to use the viewer that prints
      */
-    public void openPDF(String filename, String viewerExecute) {
-        String viewer = config.getProperty(viewerExecute);
+    public void openPDF(Settings settings, String filename, OutputType outputType, boolean print) {
+        String viewer = settings.getViewerCommand(outputType, print);
         // Will not open if left blank
         if (viewer.isEmpty()){
-            System.out.println("Will not open pdf as the viewer not set for " + viewerExecute);
+            System.out.println("Will not open pdf as the viewer not set for " + outputType.getViewerKey(print));
             return;
         }
-        // If the viewer contains %filename% then replace it with the filename
-        if (viewer.contains("%filename%")) {
-            viewer = viewer.replace("%filename%", filename);
-        } else {
-            viewer = viewer + " \"" + filename + "\"";
-        }
-        // Start a new thread to open the viewer
-        final String finalViewer = viewer;
-        new Thread(() -> {
-            try {
-                Thread.sleep(config.getProperty("ViewerDelay") != null ? Integer.parseInt(config.getProperty("ViewerDelay")) * 1000L : 0);
-                System.out.println("Opening " + filename + " with " + finalViewer);
-                Runtime.getRuntime().exec(finalViewer);
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Error opening PDF: " + e.getMessage());
-                e.printStackTrace(System.err);
-            }
-        }).start();
+        dispatcher.dispatch(viewer, print, filename,
+                settings.getViewerDelay() * 1000L, settings.getViewerTimeout() * 1000L);
     }
 
-    public boolean checkPrintIsOption(){
-        return (!config.getProperty("ViewerExecutePrintProofOfPostage").isEmpty() ||
-                !config.getProperty("ViewerExecutePrintLabels").isEmpty() ||
-                !config.getProperty("ViewerExecutePrintPackingSlip").isEmpty());
+    /**
+     * Stop opening any more pdfs, the viewers already open are left open
+     */
+    public void close() {
+        dispatcher.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves the created pdfs. Each pdf is written to a temporary file next to it and then renamed,
+ * so a viewer or printer never sees a half written file.
+ */
+public class PDFWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private PDFWriter() {
+    }
+
+    /**
+     * @param document is the pdf to save
+     * @param filename is the full path to save it to
+     * @return the number of bytes written
+     */
+    public static long save(PDDocument document, String filename) throws IOException {
+        long started = System.nanoTime();
+        Path target = Paths.get(filename);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+                document.save(output);
+            }
+            long size = Files.size(temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            ProcessingMetrics.get().addBytesWritten(size);
+            ProcessingMetrics.get().time(ProcessingMetrics.Stage.SAVE, started);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
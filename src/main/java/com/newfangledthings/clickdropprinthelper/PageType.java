@@ -0,0 +1,10 @@
+package com.newfangledthings.clickdropprinthelper;
+
+/**
+ * What a page of a Click & Drop order pdf contains
+ */
+public enum PageType {
+    LABEL,
+    PACKING_SLIP,
+    OTHER
+}
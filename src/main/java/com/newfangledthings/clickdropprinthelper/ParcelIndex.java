@@ -0,0 +1,395 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds which pdfs a parcel ended up in, by tracking number or by the start of the recipient's name or postcode.
+ * <p>
+ * Every shipping label is added as its proof of postage is saved, as one tab separated line in an append
+ * only file. The file is read back into memory when it is opened, with the tracking numbers in a hash map
+ * and the names and postcodes in sorted maps for prefix searches, so no pdf is ever read again to find a parcel.
+ * A single lookup, such as from the command line, searches the file as it is read instead, as building the
+ * maps for the whole file takes several times longer than the one search needs.
+ */
+public class ParcelIndex implements Closeable {
+    private static final Pattern POSTCODE = Pattern.compile("\\b([A-Z]{1,2}[0-9][A-Z0-9]?) ?([0-9][A-Z]{2})\\b");
+    private static final int MAX_RESULTS = 50;
+    // Parcels from the same minute are in the order they were recorded, the last one first
+    private static final Comparator<Parcel> MOST_RECENT_FIRST =
+            Comparator.comparing((Parcel parcel) -> parcel.date).thenComparingInt(parcel -> parcel.sequence).reversed();
+
+    /**
+     * A shipping label and where it ended up
+     */
+    public static class Parcel {
+        private final String date;
+        private final String trackingNumber;
+        private final String name;
+        private final String postcode;
+        private final String address;
+        private final String sourceFile;
+        private final int sourcePage;
+        private final String proofFile;
+        private final int proofRow;
+        // Where it is in the index file
+        private int sequence;
+
+        private Parcel(String date, String trackingNumber, String name, String postcode, String address,
+                       String sourceFile, int sourcePage, String proofFile, int proofRow) {
+            this.date = date;
+            this.trackingNumber = trackingNumber;
+            this.name = name;
+            this.postcode = postcode;
+            this.address = address;
+            this.sourceFile = sourceFile;
+            this.sourcePage = sourcePage;
+            this.proofFile = proofFile;
+            this.proofRow = proofRow;
+        }
+
+        public String getTrackingNumber() {
+            return trackingNumber;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPostcode() {
+            return postcode;
+        }
+
+        public String getSourceFile() {
+            return sourceFile;
+        }
+
+        public String getProofFile() {
+            return proofFile;
+        }
+
+        @Override
+        public String toString() {
+            return date + " " + trackingNumber + " " + name + ", " + address
+                    + " - page " + sourcePage + " of " + sourceFile + ", row " + proofRow + " of " + proofFile;
+        }
+
+        private String toRecord() {
+            return String.join("\t", date, trackingNumber, clean(name), postcode, clean(address),
+                    sourceFile, String.valueOf(sourcePage), proofFile, String.valueOf(proofRow));
+        }
+
+        private static Parcel fromRecord(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 9) {
+                return null;
+            }
+            try {
+                return new Parcel(fields[0], fields[1], fields[2], fields[3], fields[4],
+                        fields[5], Integer.parseInt(fields[6]), fields[7], Integer.parseInt(fields[8]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static String clean(String text) {
+            return text == null ? "" : text.replace('\t', ' ').trim();
+        }
+    }
+
+    private final Path indexFile;
+    private final Map<String, List<Parcel>> byTrackingNumber = new HashMap<>();
+    private final TreeMap<String, List<Parcel>> byName = new TreeMap<>();
+    private final TreeMap<String, List<Parcel>> byPostcode = new TreeMap<>();
+    private int parcels;
+    // Null when the index is only being searched
+    private final BufferedWriter writer;
+
+    private ParcelIndex(Path indexFile, boolean readOnly) throws IOException {
+        this.indexFile = indexFile;
+        read(readOnly);
+        this.writer = readOnly ? null
+                : Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @param indexFile is the index to read and then add to, it is created if it does not exist
+     */
+    public static ParcelIndex open(Path indexFile) throws IOException {
+        return new ParcelIndex(indexFile, false);
+    }
+
+    /**
+     * Open the index only to search it, so nothing is created or locked
+     *
+     * @param indexFile is the index to read
+     * @throws NoSuchFileException if the index does not exist
+     */
+    public static ParcelIndex read(Path indexFile) throws IOException {
+        return new ParcelIndex(indexFile, true);
+    }
+
+    /**
+     * @param settings is the settings, the index is ParcelIndexFile or parcels.log in the store folder
+     */
+    public static ParcelIndex open(Settings settings) throws IOException {
+        return open(locate(settings));
+    }
+
+    /**
+     * @param settings is the settings of a profile
+     * @return where the profile's index is, so profiles that share one can share the same index
+     */
+    public static Path locate(Settings settings) {
+        String indexFile = settings.getParcelIndexFile();
+        if (indexFile.isEmpty()) {
+            indexFile = settings.getStoreFolder() + File.separator + "parcels.log";
+        }
+        return Paths.get(indexFile).toAbsolutePath().normalize();
+    }
+
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    private void read(boolean mustExist) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // A line cut short by a crash is left out
+                Parcel parcel = Parcel.fromRecord(line);
+                if (parcel != null) {
+                    index(parcel);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing has been processed yet
+            if (mustExist) {
+                throw e;
+            }
+        }
+    }
+
+    private void index(Parcel parcel) {
+        parcel.sequence = parcels++;
+        if (!parcel.trackingNumber.isEmpty()) {
+            byTrackingNumber.computeIfAbsent(parcel.trackingNumber, key -> new ArrayList<>(1)).add(parcel);
+        }
+        // Each word of the name is a key, so the surname finds the parcel as well as the first name
+        String name = normalise(parcel.name);
+        int start = 0;
+        while (!name.isEmpty()) {
+            byName.computeIfAbsent(name.substring(start), key -> new ArrayList<>(1)).add(parcel);
+            int space = name.indexOf(' ', start);
+            if (space < 0) {
+                break;
+            }
+            start = space + 1;
+        }
+        if (!parcel.postcode.isEmpty()) {
+            byPostcode.computeIfAbsent(parcel.postcode.replace(" ", ""), key -> new ArrayList<>(1)).add(parcel);
+        }
+    }
+
+    /**
+     * Add the labels on a proof of postage once it has been saved
+     *
+     * @param proofOfPostage is the saved proof of postage
+     */
+    public synchronized void add(ProofOfPostage proofOfPostage) throws IOException {
+        if (writer == null) {
+            throw new IllegalStateException("Parcel index " + indexFile + " was opened read only");
+        }
+        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date());
+        List<ShippingLabel> shippingLabels = proofOfPostage.getShippingLabels();
+        for (int row = 0; row < shippingLabels.size(); row++) {
+            ShippingLabel label = shippingLabels.get(row);
+            String address = label.getAddress() == null ? "" : label.getAddress();
+            Parcel parcel = new Parcel(date, getTrackingNumber(label), Parcel.clean(label.getName()), getPostcode(address),
+                    address, proofOfPostage.getSources().get(row).getFilename(), label.getPage() + 1,
+                    proofOfPostage.getFilename(), row + 1);
+            writer.write(parcel.toRecord());
+            writer.newLine();
+            index(parcel);
+        }
+        writer.flush();
+    }
+
+    /**
+     * The tracking number is the last part of what is read from the label, after the service
+     */
+    private static String getTrackingNumber(ShippingLabel label) {
+        String trackingNumber = label.getTrackingNumber();
+        if (trackingNumber == null || trackingNumber.trim().isEmpty()) {
+            return "";
+        }
+        String[] parts = trackingNumber.trim().split("\\s+");
+        return normaliseTrackingNumber(parts[parts.length - 1]);
+    }
+
+    private static String getPostcode(String address) {
+        Matcher matcher = POSTCODE.matcher(address.toUpperCase());
+        String postcode = "";
+        while (matcher.find()) {
+            postcode = matcher.group(1) + " " + matcher.group(2);
+        }
+        return postcode;
+    }
+
+    private static String normaliseTrackingNumber(String trackingNumber) {
+        return trackingNumber.toUpperCase().replaceAll("[\\s-]", "");
+    }
+
+    // Upper case with single spaces, done by hand as it is run on every record when the index is read
+    private static String normalise(String text) {
+        StringBuilder normalised = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalised.length() > 0;
+            } else {
+                if (space) {
+                    normalised.append(' ');
+                    space = false;
+                }
+                normalised.append(Character.toUpperCase(c));
+            }
+        }
+        return normalised.toString();
+    }
+
+    /**
+     * @param query is a tracking number, or the start of a recipient's name or postcode
+     * @return the parcels found, the most recent first, up to 50 of them
+     */
+    public synchronized List<Parcel> find(String query) {
+        List<Parcel> found = byTrackingNumber.get(normaliseTrackingNumber(query));
+        if (found != null) {
+            return reverse(found);
+        }
+        Set<Parcel> matches = new LinkedHashSet<>();
+        String name = normalise(query);
+        if (!name.isEmpty()) {
+            addPrefixMatches(byName, name, matches);
+            addPrefixMatches(byPostcode, name.replace(" ", ""), matches);
+        }
+        List<Parcel> results = new ArrayList<>(matches);
+        results.sort(MOST_RECENT_FIRST);
+        return results.size() > MAX_RESULTS ? results.subList(0, MAX_RESULTS) : results;
+    }
+
+    /**
+     * Search the index once without reading it into memory. Each line is checked as it is read, and only
+     * the parcels that match are kept
+     *
+     * @param indexFile is the index to search
+     * @param query     is a tracking number, or the start of a recipient's name or postcode
+     * @return the same parcels as find, the most recent first, up to 50 of them
+     * @throws NoSuchFileException if the index does not exist
+     */
+    public static List<Parcel> search(Path indexFile, String query) throws IOException {
+        String trackingNumber = normaliseTrackingNumber(query);
+        String name = normalise(query);
+        String postcode = name.replace(" ", "");
+        List<Parcel> byTrackingNumber = new ArrayList<>();
+        List<Parcel> matches = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            int sequence = 0;
+            while ((line = reader.readLine()) != null) {
+                sequence++;
+                // Only the tracking number, name and postcode are looked at until a line matches
+                int trackingNumberStart = line.indexOf('\t') + 1;
+                int nameStart = line.indexOf('\t', trackingNumberStart) + 1;
+                int postcodeStart = nameStart == 0 ? 0 : line.indexOf('\t', nameStart) + 1;
+                int postcodeEnd = postcodeStart == 0 ? -1 : line.indexOf('\t', postcodeStart);
+                if (postcodeEnd < 0) {
+                    continue;
+                }
+                boolean found;
+                if (!trackingNumber.isEmpty() && nameStart - trackingNumberStart - 1 == trackingNumber.length()
+                        && line.startsWith(trackingNumber, trackingNumberStart)) {
+                    found = true;
+                } else {
+                    found = byTrackingNumber.isEmpty() && !name.isEmpty()
+                            && (startsWithWord(normalise(line.substring(nameStart, postcodeStart - 1)), name)
+                            || (postcodeEnd > postcodeStart && line.substring(postcodeStart, postcodeEnd).replace(" ", "").startsWith(postcode)));
+                }
+                if (!found) {
+                    continue;
+                }
+                // A line cut short by a crash is left out
+                Parcel parcel = Parcel.fromRecord(line);
+                if (parcel == null) {
+                    continue;
+                }
+                parcel.sequence = sequence;
+                if (parcel.trackingNumber.equals(trackingNumber)) {
+                    byTrackingNumber.add(parcel);
+                } else {
+                    matches.add(parcel);
+                }
+            }
+        }
+        if (!byTrackingNumber.isEmpty()) {
+            return reverse(byTrackingNumber);
+        }
+        matches.sort(MOST_RECENT_FIRST);
+        return matches.size() > MAX_RESULTS ? matches.subList(0, MAX_RESULTS) : matches;
+    }
+
+    // True if one of the words of the name, or the words from it on, starts with the prefix
+    private static boolean startsWithWord(String name, String prefix) {
+        int start = 0;
+        do {
+            if (name.startsWith(prefix, start)) {
+                return true;
+            }
+            start = name.indexOf(' ', start) + 1;
+        } while (start > 0);
+        return false;
+    }
+
+    private static void addPrefixMatches(TreeMap<String, List<Parcel>> index, String prefix, Set<Parcel> matches) {
+        for (List<Parcel> parcels : index.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            matches.addAll(parcels);
+        }
+    }
+
+    private static List<Parcel> reverse(List<Parcel> parcels) {
+        List<Parcel> reversed = new ArrayList<>(parcels.size());
+        for (int i = parcels.size() - 1; i >= 0; i--) {
+            reversed.add(parcels.get(i));
+        }
+        return reversed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
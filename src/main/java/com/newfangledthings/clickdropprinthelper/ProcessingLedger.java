@@ -0,0 +1,347 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers every order file that has been processed, by the SHA-256 of its content, and which of its
+ * pdfs were created.
+ * <p>
+ * It is an append only file of tab separated records, read back into memory when it is opened. A file
+ * with the same content as one already processed, such as a second download saved as order (1).pdf, is
+ * found in the index without looking at the file again. A run that never finished, because the app was
+ * closed or crashed part way through, is left unfinished so it can carry on from the pdfs it had not
+ * created yet. A run that failed with an error is not carried on with at start up, nor is one that has
+ * already stopped part way through too many times, so a file that stops the app is not tried for ever.
+ */
+public class ProcessingLedger implements Closeable {
+    private static final String START = "START";
+    private static final String STAGE = "STAGE";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    // How many times a run can stop part way through before it is no longer carried on with at start up
+    static final int MAX_ATTEMPTS = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * One or more order files that were processed together
+     */
+    public static class Run {
+        private final String hash;
+        private final List<Path> files = new ArrayList<>();
+        private final Map<OutputType, String> outputs = new EnumMap<>(OutputType.class);
+        private final Set<String> fileHashes = new HashSet<>();
+        private int starts;
+        private String finished;
+        private String failed;
+        private boolean running;
+
+        private Run(String hash) {
+            this.hash = hash;
+        }
+
+        public List<Path> getFiles() {
+            return Collections.unmodifiableList(files);
+        }
+
+        /**
+         * @param outputType is the type of pdf
+         * @return true if the pdfs of this type were all created in an earlier attempt
+         */
+        public boolean isDone(OutputType outputType) {
+            return outputs.containsKey(outputType);
+        }
+
+        /**
+         * @return when the run finished, or null if it has not
+         */
+        public String getFinished() {
+            return finished;
+        }
+
+        /**
+         * @return when the run failed with an error, or null if it has not
+         */
+        public String getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return how many times the run has been started since it last failed, each file records its own start
+         */
+        int getAttempts() {
+            return fileHashes.isEmpty() ? 0 : starts / fileHashes.size();
+        }
+    }
+
+    private final Path ledgerFile;
+    private final Map<String, Run> runs = new LinkedHashMap<>();
+    // The last run each file's content was part of
+    private final Map<String, Run> runsByFile = new LinkedHashMap<>();
+    // The runs being processed now, by the hash of each of their files, which is never written to the file
+    private final Map<String, Run> inProgress = new HashMap<>();
+    private final BufferedWriter writer;
+
+    private ProcessingLedger(Path ledgerFile) throws IOException {
+        this.ledgerFile = ledgerFile;
+        read();
+        this.writer = Files.newBufferedWriter(ledgerFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @param ledgerFile is the ledger to read and then add to, it is created if it does not exist
+     */
+    public static ProcessingLedger open(Path ledgerFile) throws IOException {
+        return new ProcessingLedger(ledgerFile);
+    }
+
+    /**
+     * @param settings is the settings, the ledger is LedgerFile or processed-orders.log in the store folder
+     */
+    public static ProcessingLedger open(Settings settings) throws IOException {
+        return open(locate(settings));
+    }
+
+    /**
+     * @param settings is the settings of a profile
+     * @return where the profile's ledger is, so profiles that share one can share the same ledger
+     */
+    public static Path locate(Settings settings) {
+        String ledgerFile = settings.getLedgerFile();
+        if (ledgerFile.isEmpty()) {
+            ledgerFile = settings.getStoreFolder() + File.separator + "processed-orders.log";
+        }
+        return Paths.get(ledgerFile).toAbsolutePath().normalize();
+    }
+
+    public Path getLedgerFile() {
+        return ledgerFile;
+    }
+
+    private void read() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(ledgerFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // A record cut short by a crash has too few fields, and is left out
+                String[] fields = line.split("\t", 5);
+                if (fields.length < 3) {
+                    continue;
+                }
+                Run run = runs.get(fields[2]);
+                if (run == null || (START.equals(fields[1]) && run.finished != null)) {
+                    // The same files processed again start a new run
+                    run = new Run(fields[2]);
+                    runs.put(fields[2], run);
+                }
+                if (START.equals(fields[1]) && fields.length == 5) {
+                    Path path = Paths.get(fields[4]);
+                    if (!run.files.contains(path)) {
+                        run.files.add(path);
+                    }
+                    run.fileHashes.add(fields[3]);
+                    run.starts++;
+                    run.failed = null;
+                    runsByFile.put(fields[3], run);
+                } else if (STAGE.equals(fields[1]) && fields.length >= 4) {
+                    try {
+                        run.outputs.put(OutputType.valueOf(fields[3]), fields.length == 5 ? fields[4] : "");
+                    } catch (IllegalArgumentException e) {
+                        // An output type from another version, it will just be created again
+                    }
+                } else if (DONE.equals(fields[1])) {
+                    run.finished = fields[0];
+                } else if (FAILED.equals(fields[1])) {
+                    run.failed = fields[0];
+                    run.starts = 0;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing has been processed yet
+        }
+    }
+
+    /**
+     * Hash the file's content a block at a time, so even a large export is never all in memory
+     *
+     * @param file is the order file
+     * @return the SHA-256 of the file as hex
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java runtime has to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param fileHash is the hash of an order file
+     * @return the finished run that processed a file with the same content, or null if there is not one
+     */
+    public synchronized Run findFinished(String fileHash) {
+        Run run = runsByFile.get(fileHash);
+        return run != null && run.finished != null ? run : null;
+    }
+
+    /**
+     * @param fileHash is the hash of an order file
+     * @return the run that is processing a file with the same content right now, or null if there is not one
+     */
+    public synchronized Run findInProgress(String fileHash) {
+        return inProgress.get(fileHash);
+    }
+
+    /**
+     * Record that the files are being processed. If the same files were being processed when the app
+     * stopped, that run is carried on with, so the pdfs it created are not created again. The run is in
+     * progress until it is finished or failed. Check for duplicates and start while holding the lock on the
+     * ledger, so two copies of the same file arriving together are not both started
+     *
+     * @param files      is the order files
+     * @param fileHashes is the hash of each file
+     * @return the run to record each stage against
+     */
+    public synchronized Run start(List<File> files, List<String> fileHashes) throws IOException {
+        String runHash = fileHashes.size() == 1 ? fileHashes.get(0) : combineHashes(fileHashes);
+        Run run = runs.get(runHash);
+        if (run != null && run.finished == null && !run.running && !run.outputs.isEmpty()) {
+            System.out.println("Carrying on from where processing of " + run.files.get(0).getFileName() + " stopped");
+        } else {
+            run = new Run(runHash);
+            runs.put(runHash, run);
+        }
+        run.files.clear();
+        run.failed = null;
+        run.running = true;
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i).toPath().toAbsolutePath().normalize();
+            run.files.add(path);
+            run.fileHashes.add(fileHashes.get(i));
+            run.starts++;
+            runsByFile.put(fileHashes.get(i), run);
+            inProgress.put(fileHashes.get(i), run);
+            append(START, runHash, fileHashes.get(i), path.toString());
+        }
+        return run;
+    }
+
+    private static String combineHashes(List<String> fileHashes) {
+        MessageDigest digest = createDigest();
+        for (String fileHash : fileHashes) {
+            digest.update(fileHash.getBytes(StandardCharsets.US_ASCII));
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @param run        is the run from start
+     * @param outputType is the type of pdf that has been created and handed on
+     * @param filenames  is the pdfs that were created
+     */
+    public synchronized void stageDone(Run run, OutputType outputType, List<String> filenames) throws IOException {
+        String outputs = String.join(",", filenames);
+        run.outputs.put(outputType, outputs);
+        append(STAGE, run.hash, outputType.name(), outputs);
+    }
+
+    /**
+     * @param run is the run from start, which is now complete
+     */
+    public synchronized void finished(Run run) throws IOException {
+        stopped(run);
+        run.finished = append(DONE, run.hash);
+    }
+
+    /**
+     * @param run    is the run from start, which stopped with an error
+     * @param reason is the error, so the ledger says why
+     */
+    public synchronized void failed(Run run, String reason) throws IOException {
+        stopped(run);
+        run.starts = 0;
+        run.failed = append(FAILED, run.hash, String.valueOf(reason).replaceAll("\\s+", " "));
+    }
+
+    private void stopped(Run run) {
+        run.running = false;
+        inProgress.values().removeIf(running -> running == run);
+    }
+
+    /**
+     * @return the runs that were started but neither finished nor failed, most likely because the app stopped
+     * part way through, leaving out any that have already stopped part way through MAX_ATTEMPTS times
+     */
+    public synchronized List<Run> getUnfinished() {
+        List<Run> unfinished = new ArrayList<>();
+        for (Run run : runs.values()) {
+            if (run.finished != null || run.failed != null || run.running || run.files.isEmpty()) {
+                continue;
+            }
+            if (run.getAttempts() >= MAX_ATTEMPTS) {
+                System.out.println("Not carrying on with " + run.files.get(0).getFileName() + " as it has stopped part way through "
+                        + run.getAttempts() + " times, download it again to try once more");
+                continue;
+            }
+            unfinished.add(run);
+        }
+        return unfinished;
+    }
+
+    // Flushed straight away, so the record is there even if the app stops on the next line
+    private String append(String... fields) throws IOException {
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        writer.write(time + "\t" + String.join("\t", fields));
+        writer.newLine();
+        writer.flush();
+        return time;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times everything that is processed, so a slow run can be put down to a stage.
+ * <p>
+ * It is always on and cheap enough to stay that way. The totals and each stage are registered
+ * as MBeans under {@value #DOMAIN}, and {@link #getSummary()} gives them as one log line.
+ */
+public class ProcessingMetrics implements ProcessingMetricsMBean {
+    private static final String DOMAIN = "com.newfangledthings.clickdropprinthelper";
+    private static final ProcessingMetrics INSTANCE = new ProcessingMetrics();
+
+    /**
+     * The stages of processing an order, files is the whole of each file from loading to opening the viewers
+     */
+    public enum Stage {
+        LOAD("load"),
+        PROOF_OF_POSTAGE("proof"),
+        QR_CODES("qr"),
+        PACKING_SLIPS("packing"),
+        LABELS("labels"),
+        SAVE("save"),
+        VIEWER("viewer"),
+        PRINT("print"),
+        FILE("file");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<Stage, StageTimer> timers = new EnumMap<>(Stage.class);
+    private final LongAdder filesProcessed = new LongAdder();
+    private final LongAdder labels = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder qrCodes = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private ProcessingMetrics() {
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, new StageTimer(stage.label));
+        }
+        register();
+    }
+
+    public static ProcessingMetrics get() {
+        return INSTANCE;
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(DOMAIN + ":type=ProcessingMetrics"));
+            for (StageTimer timer : timers.values()) {
+                server.registerMBean(timer, new ObjectName(DOMAIN + ":type=Stage,name=" + timer.getName()));
+            }
+        } catch (JMException e) {
+            // The metrics still work without JMX, they just can not be seen from outside
+            System.err.println("Unable to register metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param stage      is the stage that has finished
+     * @param startNanos is the System.nanoTime() from when the stage started
+     */
+    public void time(Stage stage, long startNanos) {
+        timers.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    public StageTimer getTimer(Stage stage) {
+        return timers.get(stage);
+    }
+
+    public void fileProcessed() {
+        filesProcessed.increment();
+    }
+
+    public void addLabels(int count) {
+        labels.add(count);
+    }
+
+    public void addPages(int count) {
+        pages.add(count);
+    }
+
+    public void addQRCodes(int count) {
+        qrCodes.add(count);
+    }
+
+    public void addBytesWritten(long count) {
+        bytesWritten.add(count);
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    @Override
+    public long getFilesProcessed() {
+        return filesProcessed.sum();
+    }
+
+    @Override
+    public long getLabels() {
+        return labels.sum();
+    }
+
+    @Override
+    public long getPages() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getQRCodes() {
+        return qrCodes.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the totals followed by the p50 and p99 of each stage that has run
+     */
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder()
+                .append(getFilesProcessed()).append(" files, ")
+                .append(getLabels()).append(" labels, ")
+                .append(getPages()).append(" pages, ")
+                .append(getQRCodes()).append(" QR codes, ")
+                .append(getBytesWritten() / 1024).append("KB written, ")
+                .append(getErrors()).append(" errors");
+        for (StageTimer timer : timers.values()) {
+            if (timer.getCount() > 0) {
+                summary.append(String.format(" | %s p50 %.0fms p99 %.0fms", timer.getName(), timer.getP50Millis(), timer.getP99Millis()));
+            }
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (StageTimer timer : timers.values()) {
+            timer.reset();
+        }
+        filesProcessed.reset();
+        labels.reset();
+        pages.reset();
+        qrCodes.reset();
+        bytesWritten.reset();
+        errors.reset();
+    }
+}
@@ -0,0 +1,22 @@
+package com.newfangledthings.clickdropprinthelper;
+
+/**
+ * The totals for everything processed since the program started, as shown in JConsole or any other JMX client
+ */
+public interface ProcessingMetricsMBean {
+    long getFilesProcessed();
+
+    long getLabels();
+
+    long getPages();
+
+    long getQRCodes();
+
+    long getBytesWritten();
+
+    long getErrors();
+
+    String getSummary();
+
+    void reset();
+}
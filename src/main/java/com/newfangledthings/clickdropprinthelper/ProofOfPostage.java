@@ -1,15 +1,26 @@
 package com.newfangledthings.clickdropprinthelper;
 
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 
-public class ProofOfPostage {
+public class ProofOfPostage implements Closeable {
     private final List<ShippingLabel> shippingLabels;
     private final String filename;
     private final String sourcePDF;
     private final int imageIndex;
+    private final List<PDImageXObject> qrCodes;
+    private final List<OrderDocument> sources;
+    private final PDDocument document;
 
-    public ProofOfPostage(String filename, List<ShippingLabel> content, String sourcePDF, int imageIndex) {
+    public ProofOfPostage(String filename, List<ShippingLabel> content, String sourcePDF, int imageIndex, List<PDImageXObject> qrCodes, List<OrderDocument> sources, PDDocument document) {
         this.shippingLabels = content;
+        this.qrCodes = qrCodes;
+        this.sources = sources;
+        this.document = document;
         this.filename = filename;
         this.sourcePDF = sourcePDF;
         this.imageIndex = imageIndex;
@@ -31,4 +42,30 @@ public class ProofOfPostage {
         return imageIndex;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return the QR code images for this proof of postage, each one at the same index as its shipping label,
+     * or null where a label has no QR code
+     */
+    public List<PDImageXObject> getQRCodes() {
+        return qrCodes;
+    }
+
+    /**
+     * @return the order each shipping label came from, as a proof of postage can be filled from more than one order
+     */
+    public List<OrderDocument> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return the proof of postage pdf, which stays open until it has been saved
+     */
+    public PDDocument getDocument() {
+        return document;
+    }
+
+    @Override
+    public void close() throws IOException {
+        document.close();
+    }
+}
@@ -1,37 +1,46 @@
 // src/main/java/com/newfangledthings/clickAndDropPrintHelper/ProofOfPostageCreator.java
 package com.newfangledthings.clickdropprinthelper;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.*;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.graphics.PDXObject;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
-import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
-import org.apache.pdfbox.text.PDFTextStripper;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class ProofOfPostageCreator {
+public class ProofOfPostageCreator implements Closeable {
 
     private final Config config;
-    private final String storeFolder;
-    private final String watchFolder;
+    private final ProofOfPostageTemplate proofOfPostageTemplate;
+    private final ExecutorService batchExecutor;
+    private final QRCodeExtractor qrCodeExtractor;
+    private final ImageCache packingSlipImages = new ImageCache();
+    private final ProcessingMetrics metrics = ProcessingMetrics.get();
 
     public ProofOfPostageCreator(Config config) {
         this.config = config;
-        this.storeFolder = config.getProperty("StoreFolder");
-        this.watchFolder = config.getProperty("WatchFolder");
+        try {
+            this.proofOfPostageTemplate = ProofOfPostageTemplate.load();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load the proof of postage template: " + e.getMessage(), e);
+        }
+        this.batchExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), WorkerPool.createThreadFactory("proof"));
+        this.qrCodeExtractor = new QRCodeExtractor();
     }
 
     /**
@@ -39,235 +48,359 @@ public class ProofOfPostageCreator {
      * Once this is done it will then open the Royal Mail proof of postage pdf and
      * populate the boxes with the text stripped from the shipping labels.
      *
-     * @param filename      is the file that it will attempt to process
+     * @param orderDocument is the loaded file that it will attempt to process
      */
-    public ProofOfPostage[] createProofOfPostage(String filename) {
-        ArrayList<ProofOfPostage> proofOfPostageArrayList = new ArrayList<>();
-        try (PDDocument pdfShippingLabels = PDDocument.load(new File(watchFolder + "\\" + filename))) {
-            System.out.println("Attempting to process " + filename);
-            String text = new PDFTextStripper().getText(pdfShippingLabels);
-            List<ShippingLabel> shippingLabels = new ArrayList<>();
-            int countTrackingNumbers = 0;
-            String[] lines = text.split("\\r\\n");
-            for (int i = 0; i <= lines.length - 1; i++) {
-                if (lines[i].contains("Shipping Address")) {
-                    shippingLabels.add(new ShippingLabel(
-                            lines[i + 1],
-                            lines[i + 2] + " " + lines[i + 3] + " " + lines[i + 4])
-                    );
+    public ProofOfPostage[] createProofOfPostage(OrderDocument orderDocument) throws IOException {
+        return createProofOfPostage(config.getSettings(), List.of(orderDocument), orderDocument.getFilename());
+    }
+
+    /**
+     * The same as for one order, but the labels of each order follow on from the last,
+     * so every proof of postage is filled to all 30 rows before the next one is started
+     *
+     * @param settings       is the settings the orders are being processed with
+     * @param orderDocuments is the loaded files, in the order their labels go on the forms
+     * @param filename       is the name the proofs of postage are named after
+     * @return null if none of the orders have any postage details
+     * @throws IOException if any of the proofs of postage could not be created, none of them are returned
+     */
+    public ProofOfPostage[] createProofOfPostage(Settings settings, List<OrderDocument> orderDocuments, String filename) throws IOException {
+        long started = System.nanoTime();
+        System.out.println("Attempting to process " + filename);
+        List<ShippingLabel> shippingLabels = new ArrayList<>();
+        List<PDImageXObject> qrCodes = new ArrayList<>();
+        List<OrderDocument> sources = new ArrayList<>();
+        for (OrderDocument orderDocument : orderDocuments) {
+            List<ShippingLabel> orderLabels = findShippingLabels(orderDocument);
+            List<PDImageXObject> orderQRCodes = orderDocument.getQRCodes();
+            for (int i = 0; i < orderLabels.size(); i++) {
+                shippingLabels.add(orderLabels.get(i));
+                // A label without a QR code keeps its place, so the next order's QR codes still line up
+                qrCodes.add(i < orderQRCodes.size() ? orderQRCodes.get(i) : null);
+                sources.add(orderDocument);
+            }
+        }
+        if (shippingLabels.isEmpty()) {
+            System.out.println("Has not found any postage details");
+            return null;
+        }
+
+        // Now create the Proof Of Postage PDF, if there is more than 30, then create additional pdfs
+        // Each batch is a separate copy of the template, so they can be filled and saved at the same time
+        String date = new SimpleDateFormat("dd/MM/yyyy").format(new Date());
+        MemoryUsageSetting memoryUsageSetting = MemorySettings.create(settings);
+        List<CompletableFuture<ProofOfPostage>> batches = new ArrayList<>();
+        for (int p = 0; p < shippingLabels.size(); p += ProofOfPostageTemplate.ROWS) {
+            int end = Math.min(p + ProofOfPostageTemplate.ROWS, shippingLabels.size());
+            List<ShippingLabel> batch = shippingLabels.subList(p, end);
+            List<PDImageXObject> batchQRCodes = qrCodes.subList(p, end);
+            List<OrderDocument> batchSources = sources.subList(p, end);
+            String uniqueFilename = FilenameGenerator.generateFilename(filename,"proof");
+            int imageIndex = p;
+            if (shippingLabels.size() <= ProofOfPostageTemplate.ROWS) {
+                try {
+                    batches.add(CompletableFuture.completedFuture(createProofOfPostageBatch(memoryUsageSetting, batch, batchQRCodes, batchSources, date, uniqueFilename, filename, imageIndex)));
+                } catch (IOException e) {
+                    batches.add(CompletableFuture.failedFuture(e));
                 }
-                if (lines[i].contains("Postage Paid GB")) {
-                    if (lines[i - 2].startsWith("Tracked")) {
-                        shippingLabels.get(countTrackingNumbers).SetTrackingNumber(lines[i - 2].replace("No Signature", "") + " " + lines[i + 3].replace(" ", "").replace("-", ""));
-                    } else {
-                        shippingLabels.get(countTrackingNumbers).SetTrackingNumber(lines[i - 2] + " " + lines[i + 3].replace(" ", "").replace("-", ""));
+            } else {
+                batches.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return createProofOfPostageBatch(memoryUsageSetting, batch, batchQRCodes, batchSources, date, uniqueFilename, filename, imageIndex);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
-                    countTrackingNumbers++;
-                }
-            }
-            if (shippingLabels.isEmpty()) {
-                System.out.println("Has not found any postage details");
-                return null;
+                }, batchExecutor));
             }
+        }
 
-            // Now create the Proof Of Postage PDF, if there is more than 30, then create additional pdfs
-            for (int p = 0; p < shippingLabels.size(); p += 30) {
-                InputStream file = getClass().getClassLoader().getResourceAsStream("Royal Mail Proof Of Postage.pdf");
-                //File file = new File(workingFolder + "\\Royal Mail Proof Of Postage.pdf");
-                PDDocument pdfRoyalMailTemplate = PDDocument.load(file);
-                PDDocumentCatalog docCatalog = pdfRoyalMailTemplate.getDocumentCatalog();
-                PDAcroForm acroForm = docCatalog.getAcroForm();
-                int countForNumberofItems = 0;
-                for (int i = p; i < shippingLabels.size() && i < p + 30; i++) {
-                    ShippingLabel label = shippingLabels.get(i);
-                    if (i == p) {
-                        acroForm.getField("1").setValue(label.getName());
-                        acroForm.getField("my text here").setValue(label.getAddress());
-                        acroForm.getField("service used 1").setValue(label.getTrackingNumber());
-                    } else {
-                        acroForm.getField("" + (i - p + 1)).setValue(label.getName());
-                        acroForm.getField("address and postcode " + (i - p + 1)).setValue(label.getAddress());
-                        acroForm.getField("service used " + (i - p + 1)).setValue(label.getTrackingNumber());
-                    }
-                    System.out.println("Found postage [" + label.getName() + "," + label.getAddress() + "," + label.getTrackingNumber() + "]");
-                    countForNumberofItems++;
+        // Wait for every batch, even once one has failed, so none are left open
+        List<ProofOfPostage> proofOfPostages = new ArrayList<>();
+        Throwable failure = null;
+        for (CompletableFuture<ProofOfPostage> batch : batches) {
+            try {
+                proofOfPostages.add(batch.join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
                 }
-                acroForm.getField("Text57").setValue(countForNumberofItems + " items");
-                acroForm.getField("Text58").setValue(new SimpleDateFormat("dd/MM/yyyy").format(new Date()));
+            }
+        }
+        if (failure != null) {
+            // The file fails as a whole rather than saving only some of its proofs of postage
+            for (ProofOfPostage proofOfPostage : proofOfPostages) {
+                try {
+                    proofOfPostage.close();
+                } catch (IOException e) {
+                    failure.addSuppressed(e);
+                }
+            }
+            throw new IOException("Unable to create the proof of postage for " + filename + ": " + failure.getMessage(), failure);
+        }
+        metrics.addLabels(shippingLabels.size());
+        metrics.time(ProcessingMetrics.Stage.PROOF_OF_POSTAGE, started);
+        return proofOfPostages.toArray(new ProofOfPostage[0]);
+    }
 
-                String uniqueFilename = FilenameGenerator.generateFilename(filename,"proof");
-                pdfRoyalMailTemplate.save(storeFolder + "\\" + uniqueFilename);
-                pdfRoyalMailTemplate.close();
+    /**
+     * Gather the shipping labels read from each page of the order when it was loaded
+     *
+     * @param orderDocument is the loaded Click & Drop pdf
+     * @return the shipping labels in the order they are in the pdf, empty if it is not a Click & Drop pdf
+     */
+    public List<ShippingLabel> findShippingLabels(OrderDocument orderDocument) {
+        List<ShippingLabel> shippingLabels = new ArrayList<>();
+        for (int page = 0; page < orderDocument.getNumberOfPages(); page++) {
+            shippingLabels.addAll(orderDocument.getLabels(page));
+        }
+        return shippingLabels;
+    }
 
-                proofOfPostageArrayList.add(new ProofOfPostage(
-                        uniqueFilename,
-                        shippingLabels.subList(p, Math.min(p + 30, shippingLabels.size())),
-                        filename,
-                        p));
-                System.out.println("Created proof of postage file " + uniqueFilename);
+    /**
+     * Fill in a copy of the proof of postage template with up to 30 labels. It is kept open
+     * so the QR page can be added, and is only written once by saveProofOfPostage
+     *
+     * @param memoryUsageSetting is how much memory the proof of postage can use
+     * @param batch              is the labels for this proof of postage
+     * @param qrCodes            is the QR code image for each label
+     * @param sources            is the order each label came from
+     * @param date               is the date to put on the form
+     * @param uniqueFilename     is the filename it will be saved as in the store folder
+     * @param sourcePDF          is the Click & Drop pdf (or pdfs) the labels came from
+     * @param imageIndex         is the index of the first label in the source pdf
+     * @return the proof of postage that was created
+     */
+    private ProofOfPostage createProofOfPostageBatch(MemoryUsageSetting memoryUsageSetting, List<ShippingLabel> batch, List<PDImageXObject> qrCodes, List<OrderDocument> sources, String date, String uniqueFilename, String sourcePDF, int imageIndex) throws IOException {
+        ProofOfPostageTemplate.Form form = proofOfPostageTemplate.newForm(memoryUsageSetting);
+        try {
+            for (int row = 0; row < batch.size(); row++) {
+                ShippingLabel label = batch.get(row);
+                form.setRow(row, label);
+                System.out.println("Found postage [" + label.getName() + "," + label.getAddress() + "," + label.getTrackingNumber() + "]");
             }
-        } catch (IOException e) {
-            System.err.println("Error creating proof of postage: " + e.getMessage());
-            e.printStackTrace(System.err);
+            form.setItems(batch.size() + " items");
+            form.setDate(date);
+        } catch (IOException | RuntimeException e) {
+            form.close();
+            throw e;
+        }
+        System.out.println("Created proof of postage " + uniqueFilename);
+        return new ProofOfPostage(uniqueFilename, batch, sourcePDF, imageIndex, qrCodes, sources, form.getDocument());
+    }
+
+    /**
+     * Write the proof of postage to the store folder once it is complete, then close it
+     *
+     * @param settings       is the settings the order is being processed with
+     * @param proofOfPostage is the proof of postage to save
+     */
+    public void saveProofOfPostage(Settings settings, ProofOfPostage proofOfPostage) throws IOException {
+        try {
+            PDFWriter.save(proofOfPostage.getDocument(), settings.getStoreFolder() + File.separator + proofOfPostage.getFilename());
+            System.out.println("Created proof of postage file " + proofOfPostage.getFilename());
+        } finally {
+            proofOfPostage.close();
         }
-        return proofOfPostageArrayList.toArray(new ProofOfPostage[0]);
     }
 
     /**
      * Uses pdfBox to open a Royal Mail PDF and extract QR codes from the shipping label.
      *
-     * @param proofOfPostage   is the proof of postage document object that hold all the data required to create the pdf
+     * @param proofOfPostage   is the proof of postage document object that hold all the data required to create the pdf,
+     *                         including the loaded Click & Drop pdfs it was created from
      */
     public void addQRCodesToProofOfPostage(ProofOfPostage proofOfPostage) {
+        long started = System.nanoTime();
         try {
-            System.out.println("Attempting to process " + storeFolder + "\\" + proofOfPostage.getFilename() + " for images");
+            System.out.println("Attempting to process " + proofOfPostage.getFilename() + " for images");
 
-            PDDocument docLoad = PDDocument.load(new File(watchFolder + "\\" + proofOfPostage.getSourcePDF()));
-            PDDocument docProofPostage = PDDocument.load(new File(storeFolder + "\\" + proofOfPostage.getFilename()));
+            PDDocument docProofPostage = proofOfPostage.getDocument();
             PDPage newPage = new PDPage(PDRectangle.A4);
             PDPageContentStream contents = new PDPageContentStream(docProofPostage, newPage);
             docProofPostage.addPage(newPage);
 
-            PDPageTree list = docLoad.getPages();
             int x = 40, y = 750, count = 0;
-            for (PDPage page : list) {
-                PDResources pdResources = page.getResources();
-
-                for (COSName c : pdResources.getXObjectNames()) {
-                    PDXObject o = pdResources.getXObject(c);
-                    if (o instanceof PDImageXObject) {
-                        if (((PDImageXObject) o).getWidth() == 128 || ((PDImageXObject) o).getWidth() == 1050) {
-                            //System.out.println("Found QR code");
-
-                            if (count >= proofOfPostage.getImageIndex() && count < proofOfPostage.getImageIndex() + 30) {
-
-                                // Add the tracking number and name
-                                ShippingLabel label = proofOfPostage.getShippingLabels().get(count - proofOfPostage.getImageIndex());
-                                String trackingNumber = label.getTrackingNumber().trim();
-                                String name = label.getName();
-
-                                contents.beginText();
-                                contents.setFont(PDType1Font.COURIER, 9);
-                                contents.newLineAtOffset(x-5, y - 15);
-                                contents.showText(trackingNumber.substring(10));
-                                contents.endText();
-
-                                contents.beginText();
-                                contents.setFont(PDType1Font.COURIER, 9);
-                                contents.newLineAtOffset(x, y - 30);
-                                contents.showText(name);
-                                contents.endText();
+            List<ShippingLabel> shippingLabels = proofOfPostage.getShippingLabels();
+            // Crop the QR codes in parallel first, then draw them all on the page
+            List<PDImageXObject> qrCodes = qrCodeExtractor.extract(docProofPostage, proofOfPostage.getSources(), proofOfPostage.getQRCodes());
+            for (int i = 0; i < shippingLabels.size() && i < qrCodes.size(); i++) {
+                PDImageXObject o = proofOfPostage.getQRCodes().get(i);
+                PDImageXObject pdi = qrCodes.get(i);
+                if (o == null) {
+                    continue;
+                }
 
-                                // Add the QR image
-                                if (((PDImageXObject) o).getWidth() == 1050) {
-                                    PDImageXObject pdi = LosslessFactory.createFromImage(docLoad, ((PDImageXObject) o).getImage().getSubimage(70, 450, 280, 280));
-                                    contents.drawImage(pdi, x, y, (float) pdi.getWidth() / 5, (float) pdi.getHeight() / 5);
-                                } else {
-                                    contents.drawImage((PDImageXObject) o, x, y, 60, 60);
-                                }
+                // Add the tracking number and name
+                ShippingLabel label = shippingLabels.get(i);
+                String trackingNumber = label.getTrackingNumber() == null ? "" : label.getTrackingNumber().trim();
+                String name = label.getName();
+
+                contents.beginText();
+                contents.setFont(PDType1Font.COURIER, 9);
+                contents.newLineAtOffset(x-5, y - 15);
+                // Without the service, unless there is nothing after it
+                contents.showText(trackingNumber.length() > 10 ? trackingNumber.substring(10) : trackingNumber);
+                contents.endText();
+
+                contents.beginText();
+                contents.setFont(PDType1Font.COURIER, 9);
+                contents.newLineAtOffset(x, y - 30);
+                contents.showText(name);
+                contents.endText();
+
+                // Add the QR image
+                if (o.getWidth() == 1050) {
+                    contents.drawImage(pdi, x, y, (float) pdi.getWidth() / 5, (float) pdi.getHeight() / 5);
+                } else {
+                    contents.drawImage(o, x, y, 60, 60);
+                }
 
-                                x += 110;
-                                if (x > 500) {
-                                    x = 40;
-                                    y -= 135;
-                                }
-                            }
-                            count++;
-                        }
-                    }
+                count++;
+                x += 110;
+                if (x > 500) {
+                    x = 40;
+                    y -= 135;
                 }
             }
             contents.close();
-            docProofPostage.save(storeFolder + "\\" + proofOfPostage.getFilename());
-            docProofPostage.close();
-            docLoad.close();
             System.out.println("Added "+count+" QR codes to " +proofOfPostage.getFilename());
+            metrics.addQRCodes(count);
+            metrics.time(ProcessingMetrics.Stage.QR_CODES, started);
 
         } catch (IOException e) {
+            metrics.error();
             System.err.println("Error adding QR codes: " + e.getMessage());
             e.printStackTrace(System.err);
         }
     }
 
-    public void removeFirstPage(ProofOfPostage proofOfPostage) throws IOException {
-        PDDocument doc = PDDocument.load(new File(storeFolder + "\\" + proofOfPostage.getFilename()));
-        doc.removePage(0);
-        doc.save(storeFolder + "\\" + proofOfPostage.getFilename());
-        doc.close();
+    public void removeFirstPage(ProofOfPostage proofOfPostage) {
+        proofOfPostage.getDocument().removePage(0);
     }
 
-    public List<Integer> findPackingSlips(Boolean isPackingSlips, PDDocument doc) throws IOException {
+    /**
+     * Find the pages of the order that are (or are not) packing slips, using the page
+     * classification that was made when the order was loaded
+     *
+     * @param isPackingSlips if true return the packing slip pages, otherwise every other page
+     * @param orderDocument  is the loaded Click & Drop pdf
+     * @return the zero based page indexes
+     */
+    public List<Integer> findPackingSlips(Boolean isPackingSlips, OrderDocument orderDocument) {
         List<Integer> packingSlipPages = new ArrayList<>();
-
-        // Regex pattern to match "Shipping Address" on the first or second line followed by an empty line
-        String regexPattern = "(?i)^(.*\\r?\\n)?Shipping Address";
-        Pattern pattern = Pattern.compile(regexPattern);
-
-        // Prepare text extractor
-        PDFTextStripper textStripper = new PDFTextStripper();
-
-        // Loop through all pages and find matches
-        for (int i = 0; i < doc.getNumberOfPages(); i++) {
-            textStripper.setStartPage(i + 1);
-            textStripper.setEndPage(i + 1);
-            String pageText = textStripper.getText(doc).trim();
-
-            Matcher matcher = pattern.matcher(pageText);
-            if (isPackingSlips == matcher.find()) { // If isPackingSlips is true, keep pages with the pattern; else, keep pages without it
+        for (int i = 0; i < orderDocument.getNumberOfPages(); i++) {
+            if (isPackingSlips == (orderDocument.getPageType(i) == PageType.PACKING_SLIP)) {
                 packingSlipPages.add(i);
             }
         }
-
         return packingSlipPages;
     }
 
 
-    public void createPackingSlips(ProofOfPostage proofOfPostage, String packingFilename) throws IOException {
-        FileUtils.copyFile(new File(watchFolder + "\\" + proofOfPostage.getSourcePDF()), new File(storeFolder + "\\" + packingFilename));
-        PDDocument doc = PDDocument.load(new File(storeFolder + "\\" + packingFilename));
-
-        // Remove pages in reverse order
-        List<Integer> pagesToRemove = findPackingSlips(false, doc); // Get pages that do NOT match
-        for (int i = pagesToRemove.size() - 1; i >= 0; i--) {
-            doc.removePage(pagesToRemove.get(i));
-        }
+    /**
+     * @param orderDocument   is the loaded Click & Drop pdf
+     * @param packingFilename is the filename to save the packing slips as in the store folder
+     */
+    public void createPackingSlips(OrderDocument orderDocument, String packingFilename) throws IOException {
+        createPackingSlips(config.getSettings(), List.of(orderDocument), packingFilename);
+    }
 
-        // now we want to add a custom header and footer to each page of the pdf
-        PDPageTree list = doc.getPages();
-        var pageWidth = doc.getPage(0).getMediaBox().getWidth();
-        var pageHeight = doc.getPage(0).getMediaBox().getHeight();
-        for (PDPage page : list) {
-            PDPageContentStream contents = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true);
-            // Check if packing slip header and footer exists
-            String headerImage = config.getProperty("PackingSlipHeaderImage");
-            if (new File( headerImage ).exists()) {
-                PDImageXObject image = PDImageXObject.createFromFile(headerImage, doc);
-                var height = (image.getHeight() * pageWidth) / image.getWidth();
-                contents.drawImage(image, 0, pageHeight - height, pageWidth, height);
+    /**
+     * @param settings        is the settings the orders are being processed with
+     * @param orderDocuments  is the loaded Click & Drop pdfs, their packing slips are put into one pdf in this order
+     * @param packingFilename is the filename to save the packing slips as in the store folder
+     */
+    public void createPackingSlips(Settings settings, List<OrderDocument> orderDocuments, String packingFilename) throws IOException {
+        long started = System.nanoTime();
+        try (PDDocument doc = new PDDocument(MemorySettings.create(settings))) {
+            // Import only the packing slip pages
+            for (OrderDocument orderDocument : orderDocuments) {
+                PDDocument source = orderDocument.getDocument();
+                for (int pageIndex : findPackingSlips(true, orderDocument)) {
+                    PDPage page = doc.importPage(source.getPage(pageIndex));
+                    detachResources(page);
+                }
             }
-            String footerImage = config.getProperty("PackingSlipFooterImage");
-            if (new File(footerImage).exists()) {
-                PDImageXObject image = PDImageXObject.createFromFile(footerImage, doc);
-                var height = (image.getHeight() * pageWidth) / image.getWidth();
-                contents.drawImage(image, 0, 0, pageWidth, height);
+
+            // now we want to add a custom header and footer to each page of the pdf
+            // Check if packing slip header and footer exists, they are added to the pdf once and drawn on every page
+            PDImageXObject header = packingSlipImages.createImage(settings.getPackingSlipHeaderImage(), doc);
+            PDImageXObject footer = packingSlipImages.createImage(settings.getPackingSlipFooterImage(), doc);
+            PDPageTree list = doc.getPages();
+            var pageWidth = doc.getPage(0).getMediaBox().getWidth();
+            var pageHeight = doc.getPage(0).getMediaBox().getHeight();
+            for (PDPage page : list) {
+                PDPageContentStream contents = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true);
+                if (header != null) {
+                    var height = (header.getHeight() * pageWidth) / header.getWidth();
+                    contents.drawImage(header, 0, pageHeight - height, pageWidth, height);
+                }
+                if (footer != null) {
+                    var height = (footer.getHeight() * pageWidth) / footer.getWidth();
+                    contents.drawImage(footer, 0, 0, pageWidth, height);
+                }
+                contents.close();
             }
-            contents.close();
+            PDFWriter.save(doc, settings.getStoreFolder() + File.separator + packingFilename);
         }
-        doc.save(storeFolder + "\\" + packingFilename);
-        doc.close();
+        metrics.time(ProcessingMetrics.Stage.PACKING_SLIPS, started);
     }
 
-    public void createLabels(ProofOfPostage proofOfPostage, String labelsFilename) throws IOException {
-        FileUtils.copyFile(new File(watchFolder + "\\" + proofOfPostage.getSourcePDF()), new File(storeFolder + "\\" + labelsFilename));
-        PDDocument doc = PDDocument.load(new File(storeFolder + "\\" + labelsFilename));
+    /**
+     * @param orderDocument  is the loaded Click & Drop pdf
+     * @param labelsFilename is the filename to save the labels as in the store folder
+     */
+    public void createLabels(OrderDocument orderDocument, String labelsFilename) throws IOException {
+        createLabels(config.getSettings(), List.of(orderDocument), labelsFilename);
+    }
 
-        // Remove pages in reverse order
-        List<Integer> pagesToRemove = findPackingSlips(true, doc); // Get pages that do NOT match
-        for (int i = pagesToRemove.size() - 1; i >= 0; i--) {
-            doc.removePage(pagesToRemove.get(i));
+    /**
+     * @param settings       is the settings the orders are being processed with
+     * @param orderDocuments is the loaded Click & Drop pdfs, their labels are put into one pdf in this order
+     * @param labelsFilename is the filename to save the labels as in the store folder
+     */
+    public void createLabels(Settings settings, List<OrderDocument> orderDocuments, String labelsFilename) throws IOException {
+        long started = System.nanoTime();
+        LabelImposer.Layout labelLayout = settings.getLabelLayout();
+        try (PDDocument doc = new PDDocument(MemorySettings.create(settings))) {
+            if (labelLayout == LabelImposer.Layout.ORIGINAL) {
+                // Import every page that is not a packing slip
+                for (OrderDocument orderDocument : orderDocuments) {
+                    PDDocument source = orderDocument.getDocument();
+                    for (int pageIndex : findPackingSlips(false, orderDocument)) {
+                        doc.importPage(source.getPage(pageIndex));
+                    }
+                }
+            } else {
+                int labels = new LabelImposer(labelLayout).impose(orderDocuments, doc);
+                System.out.println("Laid out " + labels + " labels " + labelLayout);
+            }
+            PDFWriter.save(doc, settings.getStoreFolder() + File.separator + labelsFilename);
         }
+        metrics.time(ProcessingMetrics.Stage.LABELS, started);
+    }
+
+    /**
+     * Stop the workers filling the proofs of postage and cropping the QR codes, once nothing else is being processed
+     */
+    @Override
+    public void close() {
+        batchExecutor.shutdown();
+        qrCodeExtractor.close();
+    }
 
-        doc.save(storeFolder + "\\" + labelsFilename);
-        doc.close();
+    /**
+     * An imported page shares its resources with the page in the source document, so give it
+     * its own copy before anything is drawn on it to leave the source document untouched
+     *
+     * @param page is the imported page
+     */
+    private void detachResources(PDPage page) {
+        COSDictionary resources = new COSDictionary(page.getResources().getCOSObject());
+        COSBase xObjects = resources.getDictionaryObject(COSName.XOBJECT);
+        if (xObjects instanceof COSDictionary) {
+            resources.setItem(COSName.XOBJECT, new COSDictionary((COSDictionary) xObjects));
+        }
+        page.setResources(new PDResources(resources));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Royal Mail proof of postage pdf, read into memory once so each batch of
+ * 30 labels only has to parse the bytes rather than open the resource again.
+ * Each copy is given the memory setting of the order it is for, so a change to
+ * MaxMainMemoryMB applies from the next order.
+ */
+public class ProofOfPostageTemplate {
+    public static final int ROWS = 30;
+    private static final String RESOURCE = "Royal Mail Proof Of Postage.pdf";
+    private static final String ITEMS_FIELD = "Text57";
+    private static final String DATE_FIELD = "Text58";
+
+    private final byte[] template;
+    // Field names for each row of the form, row 1 of the address column has a different name to the rest
+    private final String[] nameFields = new String[ROWS];
+    private final String[] addressFields = new String[ROWS];
+    private final String[] serviceFields = new String[ROWS];
+
+    private ProofOfPostageTemplate(byte[] template) {
+        this.template = template;
+        for (int row = 0; row < ROWS; row++) {
+            nameFields[row] = "" + (row + 1);
+            addressFields[row] = row == 0 ? "my text here" : "address and postcode " + (row + 1);
+            serviceFields[row] = "service used " + (row + 1);
+        }
+    }
+
+    /**
+     * Read the template from the jar and check it has every field that will be filled in
+     *
+     * @return the template held in memory
+     */
+    public static ProofOfPostageTemplate load() throws IOException {
+        byte[] bytes;
+        try (InputStream input = ProofOfPostageTemplate.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (input == null) {
+                throw new IOException(RESOURCE + " not found");
+            }
+            bytes = input.readAllBytes();
+        }
+        ProofOfPostageTemplate template = new ProofOfPostageTemplate(bytes);
+        // Open it once now, so a missing field is reported at startup rather than on the first order
+        template.newForm(MemoryUsageSetting.setupMainMemoryOnly()).close();
+        return template;
+    }
+
+    /**
+     * @param memoryUsageSetting is how much memory the copy of the form can use
+     * @return a new copy of the form to fill in
+     */
+    public Form newForm(MemoryUsageSetting memoryUsageSetting) throws IOException {
+        return new Form(PDDocument.load(template, "", null, null, memoryUsageSetting));
+    }
+
+    /**
+     * A copy of the proof of postage with its fields looked up once
+     */
+    public class Form implements AutoCloseable {
+        private final PDDocument document;
+        private final PDField[] names = new PDField[ROWS];
+        private final PDField[] addresses = new PDField[ROWS];
+        private final PDField[] services = new PDField[ROWS];
+        private final PDField items;
+        private final PDField date;
+
+        private Form(PDDocument document) throws IOException {
+            this.document = document;
+            try {
+                // Walk the field tree once rather than searching it for every field
+                PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+                Map<String, PDField> fields = new HashMap<>();
+                for (PDField field : acroForm.getFieldTree()) {
+                    fields.put(field.getFullyQualifiedName(), field);
+                }
+                for (int row = 0; row < ROWS; row++) {
+                    names[row] = getField(fields, nameFields[row]);
+                    addresses[row] = getField(fields, addressFields[row]);
+                    services[row] = getField(fields, serviceFields[row]);
+                }
+                items = getField(fields, ITEMS_FIELD);
+                date = getField(fields, DATE_FIELD);
+            } catch (IOException | RuntimeException e) {
+                document.close();
+                throw e;
+            }
+        }
+
+        private PDField getField(Map<String, PDField> fields, String name) throws IOException {
+            PDField field = fields.get(name);
+            if (field == null) {
+                throw new IOException("Field '" + name + "' not found in " + RESOURCE);
+            }
+            return field;
+        }
+
+        /**
+         * @param row   is the zero based row on the form
+         * @param label is the shipping label to fill the row with
+         */
+        public void setRow(int row, ShippingLabel label) throws IOException {
+            names[row].setValue(label.getName());
+            addresses[row].setValue(label.getAddress());
+            services[row].setValue(label.getTrackingNumber() == null ? "" : label.getTrackingNumber());
+        }
+
+        public void setItems(String value) throws IOException {
+            items.setValue(value);
+        }
+
+        public void setDate(String value) throws IOException {
+            date.setValue(value);
+        }
+
+        public PDDocument getDocument() {
+            return document;
+        }
+
+        @Override
+        public void close() throws IOException {
+            document.close();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Gets the QR code images ready to be drawn on the QR page of the proof of postage.
+ * <p>
+ * The small 128 wide images are already just the QR code. The 1050 wide images are the whole
+ * label, so only the QR code region is decoded and it is re-encoded as a small image. A PDDocument
+ * cannot be read from more than one thread, so the compressed bytes of each label image are copied
+ * out of the order on the calling thread, and only the inflating and cropping is done in parallel.
+ * The cropped pixels are cached on the order, so each source image is only ever cropped once, and
+ * each is encoded straight into the proof of postage that draws it.
+ */
+public class QRCodeExtractor implements Closeable {
+    private static final int LABEL_IMAGE_WIDTH = 1050;
+    // Where the QR code is on the 1050 wide label image
+    private static final Rectangle LABEL_QR_REGION = new Rectangle(70, 450, 280, 280);
+
+    private final ExecutorService executor;
+
+    public QRCodeExtractor() {
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), WorkerPool.createThreadFactory("qr"));
+    }
+
+    /**
+     * @param target  is the proof of postage the images will be drawn on, the cropped ones are created in it
+     * @param sources is the order each QR code image came from
+     * @param qrCodes is the QR code images, any that are null stay null
+     * @return the images to draw, in the same order
+     */
+    public List<PDImageXObject> extract(PDDocument target, List<OrderDocument> sources, List<PDImageXObject> qrCodes) throws IOException {
+        List<CompletableFuture<BufferedImage>> crops = new ArrayList<>(qrCodes.size());
+        for (int i = 0; i < qrCodes.size(); i++) {
+            PDImageXObject image = qrCodes.get(i);
+            if (image != null && image.getWidth() == LABEL_IMAGE_WIDTH) {
+                crops.add(sources.get(i).getCroppedQRCode(image, this::crop));
+            } else {
+                crops.add(null);
+            }
+        }
+        // Only the target document is written to, and only from this thread
+        List<PDImageXObject> images = new ArrayList<>(qrCodes.size());
+        try {
+            for (int i = 0; i < qrCodes.size(); i++) {
+                CompletableFuture<BufferedImage> crop = crops.get(i);
+                images.add(crop == null ? qrCodes.get(i) : LosslessFactory.createFromImage(target, crop.join()));
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        return images;
+    }
+
+    /**
+     * Read what is needed from the order on this thread, then crop it on a worker
+     */
+    private CompletableFuture<BufferedImage> crop(PDImageXObject image) {
+        try {
+            LabelImage labelImage = LabelImage.read(image);
+            if (labelImage == null) {
+                // Anything else, such as a jpeg, falls back to decoding the whole image with the order
+                return CompletableFuture.completedFuture(image.getImage().getSubimage(
+                        LABEL_QR_REGION.x, LABEL_QR_REGION.y, LABEL_QR_REGION.width, LABEL_QR_REGION.height));
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return labelImage.crop(LABEL_QR_REGION);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * The compressed bytes of a plain 8 bit RGB or grey label image, copied out of the order so it can be
+     * decoded on any thread
+     */
+    static final class LabelImage {
+        private final byte[] data;
+        private final int width;
+        private final int height;
+        private final int components;
+        private final boolean pngPredictor;
+
+        LabelImage(byte[] data, int width, int height, int components, boolean pngPredictor) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.components = components;
+            this.pngPredictor = pngPredictor;
+        }
+
+        /**
+         * @return the label image, or null if it is not a flate compressed 8 bit RGB or grey image
+         */
+        static LabelImage read(PDImageXObject image) throws IOException {
+            PDColorSpace colorSpace = image.getColorSpace();
+            int components = colorSpace instanceof PDDeviceRGB ? 3 : colorSpace instanceof PDDeviceGray ? 1 : 0;
+            COSStream stream = image.getCOSObject();
+            if (components == 0 || image.getBitsPerComponent() != 8 || image.isStencil() || image.getDecode() != null
+                    || image.getSoftMask() != null || image.getMask() != null || !isFlate(stream.getFilters())) {
+                return null;
+            }
+            COSDictionary parameters = getDecodeParameters(stream);
+            int predictor = parameters == null ? 1 : parameters.getInt(COSName.PREDICTOR, 1);
+            if (predictor >= 10) {
+                if (parameters.getInt(COSName.COLORS, 1) != components || parameters.getInt(COSName.BITS_PER_COMPONENT, 8) != 8
+                        || parameters.getInt(COSName.COLUMNS, 1) != image.getWidth()) {
+                    return null;
+                }
+            } else if (predictor != 1) {
+                return null;
+            }
+            try (InputStream input = stream.createRawInputStream()) {
+                return new LabelImage(input.readAllBytes(), image.getWidth(), image.getHeight(), components, predictor >= 10);
+            }
+        }
+
+        private static boolean isFlate(COSBase filters) {
+            if (filters instanceof COSArray && ((COSArray) filters).size() == 1) {
+                filters = ((COSArray) filters).getObject(0);
+            }
+            return COSName.FLATE_DECODE.equals(filters);
+        }
+
+        private static COSDictionary getDecodeParameters(COSStream stream) {
+            COSBase parameters = stream.getDictionaryObject(COSName.DECODE_PARMS, COSName.DP);
+            if (parameters instanceof COSArray && ((COSArray) parameters).size() == 1) {
+                parameters = ((COSArray) parameters).getObject(0);
+            }
+            return parameters instanceof COSDictionary ? (COSDictionary) parameters : null;
+        }
+
+        /**
+         * Only the rows down to the bottom of the region are inflated, and only the columns of the region are
+         * kept, so the whole label is never held in memory
+         *
+         * @param region is the part of the image to keep
+         * @return the region of the image
+         */
+        BufferedImage crop(Rectangle region) throws IOException {
+            if (height < region.y + region.height || width < region.x + region.width) {
+                throw new IOException("Label image is too small for the QR code");
+            }
+            // Always RGB, as a grey image is taken to be linear when it is encoded again, which would lighten it
+            BufferedImage crop = new BufferedImage(region.width, region.height, BufferedImage.TYPE_3BYTE_BGR);
+            WritableRaster raster = crop.getRaster();
+            int rowLength = width * components;
+            // With the png predictor each row starts with the filter it was encoded with
+            byte[] encoded = new byte[rowLength + (pngPredictor ? 1 : 0)];
+            byte[] row = new byte[rowLength];
+            byte[] previous = new byte[rowLength];
+            int[] pixels = new int[region.width * 3];
+            try (InputStream input = new InflaterInputStream(new ByteArrayInputStream(data))) {
+                for (int y = 0; y < region.y + region.height; y++) {
+                    if (input.readNBytes(encoded, 0, encoded.length) != encoded.length) {
+                        throw new IOException("Label image ended before the QR code");
+                    }
+                    if (pngPredictor) {
+                        byte[] swap = previous;
+                        previous = row;
+                        row = swap;
+                        unfilter(encoded, previous, row, components);
+                    } else {
+                        System.arraycopy(encoded, 0, row, 0, rowLength);
+                    }
+                    if (y >= region.y) {
+                        int offset = region.x * components;
+                        if (components == 3) {
+                            for (int i = 0; i < pixels.length; i++) {
+                                pixels[i] = row[offset + i] & 0xff;
+                            }
+                        } else {
+                            for (int x = 0; x < region.width; x++) {
+                                int grey = row[offset + x] & 0xff;
+                                pixels[x * 3] = grey;
+                                pixels[x * 3 + 1] = grey;
+                                pixels[x * 3 + 2] = grey;
+                            }
+                        }
+                        raster.setPixels(0, y - region.y, region.width, 1, pixels);
+                    }
+                }
+            }
+            return crop;
+        }
+
+        /**
+         * Undo the png filter on one row
+         *
+         * @param encoded  is the filter type followed by the filtered row
+         * @param previous is the row above once it has been unfiltered, all zero for the first row
+         * @param row      is given the unfiltered row
+         * @param bpp      is the number of bytes in a pixel
+         */
+        static void unfilter(byte[] encoded, byte[] previous, byte[] row, int bpp) throws IOException {
+            int type = encoded[0];
+            for (int i = 0; i < row.length; i++) {
+                int raw = encoded[i + 1] & 0xff;
+                int left = i >= bpp ? row[i - bpp] & 0xff : 0;
+                int up = previous[i] & 0xff;
+                int upLeft = i >= bpp ? previous[i - bpp] & 0xff : 0;
+                switch (type) {
+                    case 0:
+                        row[i] = (byte) raw;
+                        break;
+                    case 1:
+                        row[i] = (byte) (raw + left);
+                        break;
+                    case 2:
+                        row[i] = (byte) (raw + up);
+                        break;
+                    case 3:
+                        row[i] = (byte) (raw + ((left + up) >>> 1));
+                        break;
+                    case 4:
+                        row[i] = (byte) (raw + paeth(left, up, upLeft));
+                        break;
+                    default:
+                        throw new IOException("Unknown png filter " + type + " in label image");
+                }
+            }
+        }
+
+        private static int paeth(int left, int up, int upLeft) {
+            int estimate = left + up - upLeft;
+            int toLeft = Math.abs(estimate - left);
+            int toUp = Math.abs(estimate - up);
+            int toUpLeft = Math.abs(estimate - upLeft);
+            if (toLeft <= toUp && toLeft <= toUpLeft) {
+                return left;
+            }
+            return toUp <= toUpLeft ? up : upLeft;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * The settings from the config file, parsed and checked once into their proper types.
+ * <p>
+ * A Settings never changes. When the config file is saved a new one is made and swapped in by Config,
+ * so a file that is being processed carries on with the settings it started with. Anything left out of
+ * the config file gets its default, and a value that cannot be used is reported rather than ignored.
+ * <p>
+ * There is a Settings for each profile, which is a watch folder and how its order files are processed.
+ * The settings at the top of the config file are the main profile. Any other profiles are named in
+ * Profiles, and each one uses the main settings apart from those it sets itself as name.Setting, such
+ * as account2.WatchFolder and account2.StoreFolder.
+ */
+public final class Settings {
+    // The main profile has no name, its settings are the ones without a profile name in front
+    public static final String MAIN_PROFILE = "";
+    private static final Pattern PROFILE_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /**
+     * What to do when an order file is found
+     */
+    public enum BeforeRun {
+        RUN, PROMPT, STOP
+    }
+
+    private final String profile;
+    private final String watchFolder;
+    private final String storeFolder;
+    private final boolean createProofOfPostage;
+    private final boolean createQRs;
+    private final boolean createPackingSlips;
+    private final boolean createLabels;
+    private final LabelImposer.Layout labelLayout;
+    private final String packingSlipHeaderImage;
+    private final String packingSlipFooterImage;
+    private final Map<OutputType, String> viewerCommands = new EnumMap<>(OutputType.class);
+    private final Map<OutputType, String> printCommands = new EnumMap<>(OutputType.class);
+    private final Map<OutputType, String> printers = new EnumMap<>(OutputType.class);
+    private final long viewerDelay;
+    private final int viewerThreads;
+    private final long viewerTimeout;
+    private final BeforeRun beforeRun;
+    private final int processingThreads;
+    private final long batchWindow;
+    private final boolean skipDuplicates;
+    private final String ledgerFile;
+    private final String parcelIndexFile;
+    private final long fileReadyCheckInterval;
+    private final long fileReadyStableTime;
+    private final Long maxMainMemoryMB;
+    private final long metricsSummaryInterval;
+    private final String logFile;
+    private final long logFileMaxSizeKB;
+
+    private Settings(Properties properties, String profile, List<String> errors) {
+        Reader reader = new Reader(properties, profile, errors);
+        this.profile = profile;
+        this.watchFolder = reader.getRequired("WatchFolder");
+        this.storeFolder = reader.getRequired("StoreFolder");
+        this.createProofOfPostage = reader.getYesNo("CreateProofOfPostage", true);
+        this.createQRs = reader.getYesNo("CreateQRs", true);
+        this.createPackingSlips = reader.getYesNo("CreatePackingSlips", true);
+        this.createLabels = reader.getYesNo("CreateLabels", true);
+        this.labelLayout = reader.getLabelLayout("LabelLayout");
+        this.packingSlipHeaderImage = reader.getString("PackingSlipHeaderImage");
+        this.packingSlipFooterImage = reader.getString("PackingSlipFooterImage");
+        for (OutputType outputType : OutputType.values()) {
+            viewerCommands.put(outputType, reader.getString(outputType.getViewerKey(false)));
+            printCommands.put(outputType, reader.getString(outputType.getViewerKey(true)));
+            printers.put(outputType, reader.getString(outputType.getPrinterKey()).trim());
+        }
+        this.viewerDelay = reader.getNumber("ViewerDelay", 0, 0);
+        this.viewerThreads = (int) reader.getNumber("ViewerThreads", 2, 1);
+        this.viewerTimeout = reader.getNumber("ViewerTimeout", 0, 0);
+        this.beforeRun = reader.getBeforeRun("BeforeRun");
+        this.processingThreads = (int) reader.getNumber("ProcessingThreads", 2, 1);
+        this.batchWindow = reader.getNumber("BatchWindow", 0, 0);
+        this.skipDuplicates = reader.getYesNo("SkipDuplicates", true);
+        this.ledgerFile = reader.getString("LedgerFile").trim();
+        this.parcelIndexFile = reader.getString("ParcelIndexFile").trim();
+        this.fileReadyCheckInterval = reader.getNumber("FileReadyCheckInterval", 200, 10);
+        this.fileReadyStableTime = reader.getNumber("FileReadyStableTime", 500, 0);
+        // Blank is no limit, which is different from 0 which is a scratch file only
+        this.maxMainMemoryMB = reader.getString("MaxMainMemoryMB").trim().isEmpty() ? null : reader.getNumber("MaxMainMemoryMB", 0, 0);
+        this.metricsSummaryInterval = reader.getNumber("MetricsSummaryInterval", 300, 0);
+        this.logFile = reader.getString("LogFile");
+        this.logFileMaxSizeKB = reader.getNumber("LogFileMaxSizeKB", 1024, 1);
+    }
+
+    /**
+     * @param properties is the contents of the config file
+     * @param configName is the name of the config file, for the error message
+     * @return the settings of each profile by name, the main profile first, if every setting is valid
+     * @throws IllegalArgumentException listing every setting that is missing or cannot be used
+     */
+    public static Map<String, Settings> parse(Properties properties, String configName) {
+        List<String> errors = new ArrayList<>();
+        Map<String, Settings> profiles = new LinkedHashMap<>();
+        profiles.put(MAIN_PROFILE, new Settings(properties, MAIN_PROFILE, errors));
+        for (String profile : properties.getProperty("Profiles", "").split(",")) {
+            profile = profile.trim();
+            if (profile.isEmpty()) {
+                continue;
+            }
+            if (!PROFILE_NAME.matcher(profile).matches()) {
+                errors.add("Profile name '" + profile + "' can only have letters, numbers, - and _");
+            } else if (profiles.containsKey(profile)) {
+                errors.add("Profile " + profile + " is in Profiles more than once");
+            } else {
+                profiles.put(profile, new Settings(properties, profile, errors));
+            }
+        }
+        // Two profiles watching one folder would both process every file in it
+        Map<Path, String> watchFolders = new LinkedHashMap<>();
+        for (Settings settings : profiles.values()) {
+            if (settings.watchFolder.trim().isEmpty()) {
+                continue;
+            }
+            String other = watchFolders.putIfAbsent(Paths.get(settings.watchFolder).toAbsolutePath().normalize(), settings.getProfileName());
+            if (other != null) {
+                errors.add(settings.getProfileName() + " watches the same folder as " + other + ", set " + settings.profile + ".WatchFolder");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid settings in " + configName + ": " + String.join("; ", errors));
+        }
+        return Collections.unmodifiableMap(profiles);
+    }
+
+    /**
+     * Most settings are used from the next order file, but some are only read when the app starts. The
+     * threads, metrics and log file are shared by every profile, so they are only taken from the main profile
+     *
+     * @param previous is the settings that were in use
+     * @return the settings that have changed but will not be used until the app is restarted
+     */
+    public List<String> getRestartChanges(Settings previous) {
+        List<String> changes = new ArrayList<>();
+        addIfChanged(changes, "WatchFolder", previous.watchFolder, watchFolder);
+        addIfChanged(changes, "FileReadyCheckInterval", previous.fileReadyCheckInterval, fileReadyCheckInterval);
+        addIfChanged(changes, "FileReadyStableTime", previous.fileReadyStableTime, fileReadyStableTime);
+        if (profile.isEmpty()) {
+            addIfChanged(changes, "ProcessingThreads", previous.processingThreads, processingThreads);
+            addIfChanged(changes, "ViewerThreads", previous.viewerThreads, viewerThreads);
+            addIfChanged(changes, "MetricsSummaryInterval", previous.metricsSummaryInterval, metricsSummaryInterval);
+            addIfChanged(changes, "LogFile", previous.logFile, logFile);
+            addIfChanged(changes, "LogFileMaxSizeKB", previous.logFileMaxSizeKB, logFileMaxSizeKB);
+        }
+        return changes;
+    }
+
+    private void addIfChanged(List<String> changes, String key, Object previous, Object current) {
+        if (!Objects.equals(previous, current)) {
+            changes.add(profile.isEmpty() ? key : profile + "." + key);
+        }
+    }
+
+    /**
+     * @return the name of the profile, empty for the main profile
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return the name of the profile to show in messages
+     */
+    public String getProfileName() {
+        return profile.isEmpty() ? "the main profile" : "profile " + profile;
+    }
+
+    public String getWatchFolder() {
+        return watchFolder;
+    }
+
+    public String getStoreFolder() {
+        return storeFolder;
+    }
+
+    public boolean isCreateProofOfPostage() {
+        return createProofOfPostage;
+    }
+
+    public boolean isCreateQRs() {
+        return createQRs;
+    }
+
+    public boolean isCreatePackingSlips() {
+        return createPackingSlips;
+    }
+
+    public boolean isCreateLabels() {
+        return createLabels;
+    }
+
+    public LabelImposer.Layout getLabelLayout() {
+        return labelLayout;
+    }
+
+    public String getPackingSlipHeaderImage() {
+        return packingSlipHeaderImage;
+    }
+
+    public String getPackingSlipFooterImage() {
+        return packingSlipFooterImage;
+    }
+
+    /**
+     * @param outputType is the type of pdf
+     * @param print      is true for the command that prints rather than the one that opens the pdf
+     * @return the viewer command, empty if the pdf is not to be opened
+     */
+    public String getViewerCommand(OutputType outputType, boolean print) {
+        return (print ? printCommands : viewerCommands).get(outputType);
+    }
+
+    /**
+     * @return true if any pdf can be printed with a viewer command
+     */
+    public boolean hasPrintCommand() {
+        for (String command : printCommands.values()) {
+            if (!command.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param outputType is the type of pdf
+     * @return the printer to print it to without a viewer, empty to use the viewer command
+     */
+    public String getPrinter(OutputType outputType) {
+        return printers.get(outputType);
+    }
+
+    /**
+     * @return how long to wait before opening a pdf, in seconds
+     */
+    public long getViewerDelay() {
+        return viewerDelay;
+    }
+
+    public int getViewerThreads() {
+        return viewerThreads;
+    }
+
+    /**
+     * @return how long a print can take before it is stopped, in seconds, or 0 to never stop it
+     */
+    public long getViewerTimeout() {
+        return viewerTimeout;
+    }
+
+    public BeforeRun getBeforeRun() {
+        return beforeRun;
+    }
+
+    public int getProcessingThreads() {
+        return processingThreads;
+    }
+
+    /**
+     * @return how long to wait for more order files to combine with the first, in seconds, 0 for off
+     */
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public boolean isSkipDuplicates() {
+        return skipDuplicates;
+    }
+
+    /**
+     * @return the ledger of processed orders, empty for the default in the store folder
+     */
+    public String getLedgerFile() {
+        return ledgerFile;
+    }
+
+    /**
+     * @return the parcel index, empty for the default in the store folder
+     */
+    public String getParcelIndexFile() {
+        return parcelIndexFile;
+    }
+
+    public long getFileReadyCheckInterval() {
+        return fileReadyCheckInterval;
+    }
+
+    public long getFileReadyStableTime() {
+        return fileReadyStableTime;
+    }
+
+    /**
+     * @return how much memory each pdf can use in MB, or null for no limit
+     */
+    public Long getMaxMainMemoryMB() {
+        return maxMainMemoryMB;
+    }
+
+    /**
+     * @return the seconds between metrics summaries, 0 for none
+     */
+    public long getMetricsSummaryInterval() {
+        return metricsSummaryInterval;
+    }
+
+    /**
+     * @return the log file for the console output, empty for none
+     */
+    public String getLogFile() {
+        return logFile;
+    }
+
+    public long getLogFileMaxSizeKB() {
+        return logFileMaxSizeKB;
+    }
+
+    /**
+     * Reads each setting of a profile from the properties, its own setting if it has one and otherwise
+     * the main one, adding a message to the errors for any that cannot be used
+     */
+    private static class Reader {
+        private final Properties properties;
+        private final String prefix;
+        private final List<String> errors;
+
+        private Reader(Properties properties, String profile, List<String> errors) {
+            this.properties = properties;
+            this.prefix = profile.isEmpty() ? "" : profile + ".";
+            this.errors = errors;
+        }
+
+        private String getString(String key) {
+            return properties.getProperty(prefix + key, properties.getProperty(key, ""));
+        }
+
+        // The key the value came from, so a bad main setting is only reported once rather than for every profile
+        private String name(String key) {
+            return properties.containsKey(prefix + key) ? prefix + key : key;
+        }
+
+        private void error(String message) {
+            if (!errors.contains(message)) {
+                errors.add(message);
+            }
+        }
+
+        private String getRequired(String key) {
+            String value = getString(key);
+            if (value.trim().isEmpty()) {
+                error(name(key) + " must be set");
+            }
+            return value;
+        }
+
+        private boolean getYesNo(String key, boolean defaultValue) {
+            String value = getString(key).trim();
+            if (value.isEmpty()) {
+                return defaultValue;
+            }
+            if (value.equalsIgnoreCase("yes")) {
+                return true;
+            }
+            if (value.equalsIgnoreCase("no")) {
+                return false;
+            }
+            error(name(key) + " must be yes or no, not '" + value + "'");
+            return defaultValue;
+        }
+
+        private long getNumber(String key, long defaultValue, long minimum) {
+            String value = getString(key).trim();
+            if (value.isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                long number = Long.parseLong(value);
+                if (number >= minimum) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below along with a number that is too small
+            }
+            error(name(key) + " must be a whole number of at least " + minimum + ", not '" + value + "'");
+            return defaultValue;
+        }
+
+        private LabelImposer.Layout getLabelLayout(String key) {
+            try {
+                return LabelImposer.Layout.fromConfig(getString(key));
+            } catch (IllegalArgumentException e) {
+                error(prefix.isEmpty() ? e.getMessage() : e.getMessage().replace(key, name(key)));
+                return LabelImposer.Layout.ORIGINAL;
+            }
+        }
+
+        // Unset monitors as normal and runs, so anything else is most likely a typing mistake
+        private BeforeRun getBeforeRun(String key) {
+            String value = getString(key).trim();
+            if (value.isEmpty()) {
+                return BeforeRun.RUN;
+            }
+            for (BeforeRun beforeRun : BeforeRun.values()) {
+                if (beforeRun.name().equalsIgnoreCase(value)) {
+                    return beforeRun;
+                }
+            }
+            error(name(key) + " must be stop, prompt, run or blank, not '" + value + "'");
+            return BeforeRun.RUN;
+        }
+    }
+}
@@ -4,12 +4,25 @@ public class ShippingLabel {
     private String name;
     private String address;
     private String trackingNumber;
+    private int page;
+    private int quadrant;
 
     public ShippingLabel(String name, String address) {
         this.name = name;
         this.address = address;
     }
 
+    /**
+     * @param page     is the zero based page of the order pdf the label is on
+     * @param quadrant is which quarter of the page the label is in, 0 to 3 from the top left across then down
+     */
+    public ShippingLabel(String name, String address, int page, int quadrant) {
+        this.name = name;
+        this.address = address;
+        this.page = page;
+        this.quadrant = quadrant;
+    }
+
     public ShippingLabel(String name, String address, String trackingNumber) {
         this.name = name;
         this.address = address;
@@ -31,4 +44,12 @@ public class ShippingLabel {
     public String getTrackingNumber() {
         return trackingNumber;
     }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getQuadrant() {
+        return quadrant;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.newfangledthings.clickdropprinthelper;
+
+/**
+ * How long one stage of processing has taken, as shown in JConsole or any other JMX client
+ */
+public interface StageTimerMBean {
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    void reset();
+}
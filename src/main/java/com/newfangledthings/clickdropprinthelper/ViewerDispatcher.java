@@ -0,0 +1,153 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the viewer and print commands for the created pdfs on a small pool, rather than a thread and
+ * a process per pdf all at once.
+ * <p>
+ * The pool only starts the processes, and each one is reaped when it exits, so a viewer that stays open
+ * after printing never holds up the next pdf. A print command is only stopped after the timeout when
+ * one is set, as most viewers, such as Acrobat, stay open after printing. A viewer is left open for the user.
+ */
+public class ViewerDispatcher {
+    private static final int QUEUE_SIZE = 100;
+
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * @param threads is the number of commands that can be started at the same time
+     */
+    public ViewerDispatcher(int threads) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(WorkerPool.createThreadFactory("viewer-delay"));
+        int poolSize = Math.max(1, threads);
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), WorkerPool.createThreadFactory("viewer"));
+    }
+
+    /**
+     * @param command       is the viewer command from the config, with or without %filename%
+     * @param print         is true if the command prints rather than opens the pdf
+     * @param filename      is the pdf to open
+     * @param delayMillis   is how long to wait before running the command
+     * @param timeoutMillis is how long a print can run before it is stopped, 0 to leave it running
+     */
+    public void dispatch(String command, boolean print, String filename, long delayMillis, long timeoutMillis) {
+        scheduler.schedule(() -> submit(command, print, filename, timeoutMillis), Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void submit(String command, boolean print, String filename, long timeoutMillis) {
+        try {
+            workers.execute(() -> run(command, print, filename, timeoutMillis));
+        } catch (RejectedExecutionException e) {
+            System.err.println("Too many pdfs waiting to be opened, not opening " + filename);
+        }
+    }
+
+    private void run(String command, boolean print, String filename, long timeoutMillis) {
+        List<String> arguments = splitArguments(command);
+        if (arguments.isEmpty()) {
+            return;
+        }
+        // The filename is its own argument, so spaces in it do not need quoting
+        List<String> processArguments = new ArrayList<>();
+        for (String argument : arguments) {
+            processArguments.add(argument.replace("%filename%", filename));
+        }
+        if (!command.contains("%filename%")) {
+            processArguments.add(filename);
+        }
+        runProcess(processArguments, print, timeoutMillis, filename);
+    }
+
+    private void runProcess(List<String> arguments, boolean print, long timeoutMillis, String description) {
+        System.out.println("Opening " + description + " with " + String.join(" ", arguments));
+        try {
+            long started = System.nanoTime();
+            Process process = new ProcessBuilder(arguments)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            ProcessingMetrics.get().time(ProcessingMetrics.Stage.VIEWER, started);
+            if (!print) {
+                // Stays open for the user to look at, so do not wait for it but reap it when it is closed
+                process.onExit().thenAccept(exited -> System.out.println("Viewer for " + description + " closed"));
+                return;
+            }
+            process.onExit().thenAccept(exited -> {
+                if (exited.exitValue() != 0) {
+                    System.out.println("Print of " + description + " finished with exit code " + exited.exitValue());
+                }
+            });
+            if (timeoutMillis > 0) {
+                scheduler.schedule(() -> stop(process, timeoutMillis, description), timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException e) {
+            ProcessingMetrics.get().error();
+            System.err.println("Error opening PDF: " + e.getMessage());
+            e.printStackTrace(System.err);
+        }
+    }
+
+    private void stop(Process process, long timeoutMillis, String description) {
+        if (!process.isAlive()) {
+            return;
+        }
+        System.err.println("Stopping print of " + description + " as it did not finish in " + timeoutMillis / 1000 + " seconds");
+        process.destroy();
+        process.onExit().completeOnTimeout(null, 5, TimeUnit.SECONDS).thenRun(() -> {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        });
+    }
+
+    /**
+     * Split a command line into its arguments on spaces, keeping anything in double quotes together
+     *
+     * @param command is the command line, such as "C:\Program Files\Viewer.exe" /t "%filename%"
+     * @return the program followed by each of its arguments, without the quotes
+     */
+    static List<String> splitArguments(String command) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inArgument = false;
+        for (char c : command.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                inArgument = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArgument) {
+                    arguments.add(current.toString());
+                    current.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                current.append(c);
+                inArgument = true;
+            }
+        }
+        if (inArgument) {
+            arguments.add(current.toString());
+        }
+        return arguments;
+    }
+
+    /**
+     * Stop starting any more commands, anything already started is left running
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -6,7 +6,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.IOException;
 import java.net.URL;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.*;
 
 public class WindowsApp {
     public static void main(String[] args) throws IOException, InterruptedException {
@@ -17,6 +19,7 @@ public class WindowsApp {
         Config config;
         boolean consoleMode = false;
         config = new Config("config.properties");
+        consoleWindow.setLogFile(config);
 
         if (!SystemTray.isSupported()) {
             System.err.println("System tray not supported!");
@@ -40,12 +43,16 @@ public class WindowsApp {
 
         MenuItem configItem = new MenuItem("Configuration");
         configItem.addActionListener(e -> {
-            Properties properties = config.getProperties();
-            ConfigWindow configWindow = new ConfigWindow(properties);
+            ConfigWindow configWindow = new ConfigWindow(config);
             configWindow.setVisible(true);
         });
         popup.add(configItem);
 
+        FileWatcher fileWatcher = new FileWatcher(config, consoleMode);
+        MenuItem findItem = new MenuItem("Find Parcel");
+        findItem.addActionListener(e -> findParcel(fileWatcher.getParcelIndexes()));
+        popup.add(findItem);
+
         MenuItem exitItem = new MenuItem("Exit");
         exitItem.addActionListener(e -> System.exit(0));
         popup.add(exitItem);
@@ -68,7 +75,32 @@ public class WindowsApp {
             System.err.println("Error adding tray icon: " + e.getMessage());
         }
 
-        FileWatcher fileWatcher = new FileWatcher(config, consoleMode);
         fileWatcher.watch();
     }
+
+    /**
+     * Ask for a tracking number, name or postcode and show which pdfs the parcels are in
+     */
+    private static void findParcel(List<ParcelIndex> parcelIndexes) {
+        String query = JOptionPane.showInputDialog(null, "Tracking number, or the start of a name or postcode",
+                "Find Parcel", JOptionPane.QUESTION_MESSAGE);
+        if (query == null || query.trim().isEmpty()) {
+            return;
+        }
+        List<ParcelIndex.Parcel> parcels = new ArrayList<>();
+        for (ParcelIndex parcelIndex : parcelIndexes) {
+            parcels.addAll(parcelIndex.find(query.trim()));
+        }
+        if (parcels.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "No parcels found for " + query.trim(), "Find Parcel", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        StringBuilder results = new StringBuilder();
+        for (ParcelIndex.Parcel parcel : parcels) {
+            results.append(parcel).append(System.lineSeparator());
+        }
+        JTextArea textArea = new JTextArea(results.toString(), Math.min(parcels.size(), 15), 100);
+        textArea.setEditable(false);
+        JOptionPane.showMessageDialog(null, new JScrollPane(textArea), "Find Parcel", JOptionPane.INFORMATION_MESSAGE);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the pool of workers that process the order files
+ */
+public class WorkerPool {
+
+    private WorkerPool() {
+    }
+
+    /**
+     * Create a pool with a fixed number of workers. When running on Java 21 or later the workers
+     * are virtual threads, otherwise they are normal daemon threads.
+     *
+     * @param threads   is the number of files that can be processed at the same time
+     * @return the executor to submit the work to
+     */
+    public static ExecutorService create(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), createThreadFactory("worker"));
+    }
+
+    static ThreadFactory createThreadFactory(String name) {
+        ThreadFactory virtualThreadFactory = createVirtualThreadFactory(name);
+        if (virtualThreadFactory != null) {
+            return virtualThreadFactory;
+        }
+        AtomicInteger count = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * The project is built for Java 11, so look up Thread.ofVirtual().name(name, 1).factory() by reflection
+     *
+     * @return the virtual thread factory or null if virtual threads are not available
+     */
+    private static ThreadFactory createVirtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
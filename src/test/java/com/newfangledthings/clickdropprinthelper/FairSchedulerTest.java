@@ -0,0 +1,94 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FairSchedulerTest {
+
+    @Test
+    void profilesTakeTurns() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler(1);
+        List<String> order = new ArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        try {
+            scheduler.submit("a", () -> {
+                awaitQuietly(release);
+                record(order, "a1", done);
+            });
+            // Queued while the only worker is busy, the folder with the most files first
+            scheduler.submit("a", () -> record(order, "a2", done));
+            scheduler.submit("a", () -> record(order, "a3", done));
+            scheduler.submit("b", () -> record(order, "b1", done));
+            scheduler.submit("b", () -> record(order, "b2", done));
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdown();
+        }
+        synchronized (order) {
+            assertEquals(List.of("a1", "a2", "b1", "a3", "b2"), order);
+        }
+    }
+
+    @Test
+    void jobsAreNotStartedAfterShutdown() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler(1);
+        List<String> order = new ArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.submit("a", () -> {
+            awaitQuietly(release);
+            record(order, "running", done);
+        });
+        scheduler.submit("a", () -> record(order, "waiting", done));
+        scheduler.shutdown();
+        scheduler.submit("b", () -> record(order, "submitted after shutdown", done));
+        release.countDown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        synchronized (order) {
+            assertEquals(List.of("running"), order);
+        }
+    }
+
+    @Test
+    void runningJobsAreInterruptedByShutdownNow() throws InterruptedException {
+        FairScheduler scheduler = new FairScheduler(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        scheduler.submit("a", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        scheduler.shutdownNow();
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static void record(List<String> order, String job, CountDownLatch done) {
+        synchronized (order) {
+            order.add(job);
+        }
+        done.countDown();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
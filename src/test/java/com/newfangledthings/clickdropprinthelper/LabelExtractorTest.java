@@ -0,0 +1,79 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LabelExtractorTest {
+    // The text of one quarter of an A4 label sheet, as it is read from the page
+    private static final String LABEL = String.join("\n",
+            "Royal Mail",
+            "Click & Drop",
+            "Shipping Address",
+            "Customer 8",
+            "8 High Street",
+            "Town",
+            "AB8 1CD",
+            "Tracked 48 No Signature",
+            "RM",
+            "Postage Paid GB",
+            "Tracking",
+            "Reference",
+            "AB 0000 0008 8GB",
+            "");
+
+    @Test
+    void labelIsRead() {
+        ShippingLabel label = LabelExtractor.parse(LABEL, 2, 3);
+        assertEquals("Customer 8", label.getName());
+        assertEquals("8 High Street Town AB8 1CD", label.getAddress());
+        assertEquals("Tracked 48  AB000000088GB", label.getTrackingNumber());
+        assertEquals(2, label.getPage());
+        assertEquals(3, label.getQuadrant());
+    }
+
+    @Test
+    void windowsLineEndingsAndBlankLinesAreIgnored() {
+        ShippingLabel label = LabelExtractor.parse(LABEL.replace("\n", "\r\n\r\n"), 0, 0);
+        assertEquals("Customer 8", label.getName());
+        assertEquals("8 High Street Town AB8 1CD", label.getAddress());
+    }
+
+    @Test
+    void addressEndsAtThePostcode() {
+        String text = LABEL.replace("Town\n", "Village\nTown\nCounty\n");
+        assertEquals("8 High Street Village Town County AB8 1CD", LabelExtractor.parse(text, 0, 0).getAddress());
+    }
+
+    @Test
+    void labelCutOffBeforeThePostageHasABlankTrackingNumber() {
+        String text = LABEL.substring(0, LABEL.indexOf("Tracked"));
+        ShippingLabel label = LabelExtractor.parse(text, 0, 0);
+        assertEquals("Customer 8", label.getName());
+        assertEquals("", label.getTrackingNumber());
+    }
+
+    @Test
+    void labelWithoutPostagePaidLineHasABlankTrackingNumber() {
+        ShippingLabel label = LabelExtractor.parse(LABEL.replace("Postage Paid GB\n", ""), 0, 0);
+        assertEquals("8 High Street Town AB8 1CD", label.getAddress());
+        assertEquals("", label.getTrackingNumber());
+    }
+
+    @Test
+    void textWithoutShippingAddressIsNotALabel() {
+        assertNull(LabelExtractor.parse("Packing Slip\nOrder 1234\n", 0, 0));
+        assertNull(LabelExtractor.parse("", 0, 0));
+    }
+
+    @Test
+    void a4IsRecognisedEitherSideOfRounding() {
+        assertTrue(LabelExtractor.isA4(PDRectangle.A4.getWidth(), PDRectangle.A4.getHeight()));
+        assertTrue(LabelExtractor.isA4(595, 842));
+        assertFalse(LabelExtractor.isA4(288, 432));
+    }
+}
@@ -0,0 +1,131 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParcelIndexTest {
+    @TempDir
+    Path folder;
+
+    private Path indexFile;
+
+    @BeforeEach
+    void writeIndex() throws IOException {
+        indexFile = folder.resolve("parcels.log");
+        Files.write(indexFile, List.of(
+                record("2026-01-01 09:00", "AB000000011GB", "Jane Smith", "AB1 2CD", "order-1.pdf", 1),
+                record("2026-01-02 09:00", "AB000000022GB", "John  Smithson", "AB12 3EF", "order-2.pdf", 1),
+                record("2026-01-03 09:00", "AB000000033GB", "Mary Jones", "CD4 5GH", "order-3.pdf", 2),
+                // Cut short by a crash
+                "2026-01-04 09:00\tAB000000044GB\tPeter"), StandardCharsets.UTF_8);
+    }
+
+    private static String record(String date, String trackingNumber, String name, String postcode, String sourceFile, int sourcePage) {
+        return String.join("\t", date, trackingNumber, name, postcode, "1 High Street Town " + postcode,
+                sourceFile, String.valueOf(sourcePage), "proof-" + sourceFile, "1");
+    }
+
+    private static List<String> trackingNumbers(List<ParcelIndex.Parcel> parcels) {
+        List<String> trackingNumbers = new ArrayList<>();
+        for (ParcelIndex.Parcel parcel : parcels) {
+            trackingNumbers.add(parcel.getTrackingNumber());
+        }
+        return trackingNumbers;
+    }
+
+    @Test
+    void findsByTrackingNumberAsPrinted() throws IOException {
+        try (ParcelIndex parcelIndex = ParcelIndex.read(indexFile)) {
+            List<ParcelIndex.Parcel> parcels = parcelIndex.find("ab 0000 0002 2gb");
+            assertEquals(List.of("AB000000022GB"), trackingNumbers(parcels));
+            assertEquals("order-2.pdf", parcels.get(0).getSourceFile());
+        }
+    }
+
+    @Test
+    void findsByStartOfFirstNameOrSurname() throws IOException {
+        try (ParcelIndex parcelIndex = ParcelIndex.read(indexFile)) {
+            assertEquals(List.of("AB000000011GB"), trackingNumbers(parcelIndex.find("jan")));
+            // The most recent first
+            assertEquals(List.of("AB000000022GB", "AB000000011GB"), trackingNumbers(parcelIndex.find("smith")));
+            assertEquals(List.of("AB000000022GB"), trackingNumbers(parcelIndex.find("john smiths")));
+        }
+    }
+
+    @Test
+    void findsByStartOfPostcodeWithOrWithoutTheSpace() throws IOException {
+        try (ParcelIndex parcelIndex = ParcelIndex.read(indexFile)) {
+            assertEquals(List.of("AB000000022GB", "AB000000011GB"), trackingNumbers(parcelIndex.find("AB1")));
+            assertEquals(List.of("AB000000011GB"), trackingNumbers(parcelIndex.find("ab1 2c")));
+            assertEquals(List.of("AB000000033GB"), trackingNumbers(parcelIndex.find("CD45GH")));
+        }
+    }
+
+    @Test
+    void truncatedLineIsLeftOut() throws IOException {
+        try (ParcelIndex parcelIndex = ParcelIndex.read(indexFile)) {
+            assertTrue(parcelIndex.find("AB000000044GB").isEmpty());
+            assertTrue(parcelIndex.find("Peter").isEmpty());
+        }
+    }
+
+    @Test
+    void nothingFoundForBlankQuery() throws IOException {
+        try (ParcelIndex parcelIndex = ParcelIndex.read(indexFile)) {
+            assertTrue(parcelIndex.find("  ").isEmpty());
+        }
+    }
+
+    @Test
+    void readingMissingIndexDoesNotCreateIt() {
+        Path missing = folder.resolve("missing").resolve("parcels.log");
+        assertThrows(NoSuchFileException.class, () -> ParcelIndex.read(missing));
+        assertFalse(Files.exists(missing));
+    }
+
+    @Test
+    void readOnlyIndexCannotBeAddedTo() throws IOException {
+        try (ParcelIndex parcelIndex = ParcelIndex.read(indexFile)) {
+            assertThrows(IllegalStateException.class, () -> parcelIndex.add(null));
+        }
+    }
+
+    @Test
+    void searchingFindsTheSameParcelsAsReading() throws IOException {
+        try (ParcelIndex parcelIndex = ParcelIndex.read(indexFile)) {
+            for (String query : List.of("ab 0000 0002 2gb", "smith", "john smiths", "AB1", "CD45GH", "Peter", "  ", "AB000000011")) {
+                assertEquals(trackingNumbers(parcelIndex.find(query)), trackingNumbers(ParcelIndex.search(indexFile, query)), query);
+            }
+        }
+    }
+
+    @Test
+    void searchingMissingIndexDoesNotCreateIt() {
+        Path missing = folder.resolve("missing").resolve("parcels.log");
+        assertThrows(NoSuchFileException.class, () -> ParcelIndex.search(missing, "Smith"));
+        assertFalse(Files.exists(missing));
+    }
+
+    @Test
+    void openingMissingIndexCreatesIt() throws IOException {
+        Path created = folder.resolve("new-parcels.log");
+        try (ParcelIndex parcelIndex = ParcelIndex.open(created)) {
+            assertTrue(parcelIndex.find("Smith").isEmpty());
+        }
+        assertTrue(Files.exists(created));
+    }
+}
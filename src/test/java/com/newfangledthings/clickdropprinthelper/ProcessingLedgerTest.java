@@ -0,0 +1,165 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessingLedgerTest {
+    private static final String HASH = "0a1b2c";
+
+    @TempDir
+    Path folder;
+
+    private Path ledgerFile() {
+        return folder.resolve("processed-orders.log");
+    }
+
+    private File orderFile() {
+        return folder.resolve("order-1.pdf").toFile();
+    }
+
+    // Start the run and close the ledger without finishing, as if the app had stopped part way through
+    private void startAndStop() throws IOException {
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ledger.start(List.of(orderFile()), List.of(HASH));
+        }
+    }
+
+    @Test
+    void finishedRunIsFoundAfterReopening() throws IOException {
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ProcessingLedger.Run run = ledger.start(List.of(orderFile()), List.of(HASH));
+            ledger.stageDone(run, OutputType.PROOF_OF_POSTAGE, List.of("proof.pdf"));
+            ledger.finished(run);
+        }
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ProcessingLedger.Run run = ledger.findFinished(HASH);
+            assertNotNull(run);
+            assertTrue(run.isDone(OutputType.PROOF_OF_POSTAGE));
+            assertTrue(ledger.getUnfinished().isEmpty());
+        }
+    }
+
+    @Test
+    void stoppedRunCarriesOnFromItsStages() throws IOException {
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ProcessingLedger.Run run = ledger.start(List.of(orderFile()), List.of(HASH));
+            ledger.stageDone(run, OutputType.PROOF_OF_POSTAGE, List.of("proof.pdf"));
+        }
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            assertNull(ledger.findFinished(HASH));
+            List<ProcessingLedger.Run> unfinished = ledger.getUnfinished();
+            assertEquals(1, unfinished.size());
+            assertEquals(List.of(orderFile().toPath().toAbsolutePath().normalize()), unfinished.get(0).getFiles());
+
+            ProcessingLedger.Run run = ledger.start(List.of(orderFile()), List.of(HASH));
+            assertSame(unfinished.get(0), run);
+            assertTrue(run.isDone(OutputType.PROOF_OF_POSTAGE));
+            assertFalse(run.isDone(OutputType.LABELS));
+        }
+    }
+
+    @Test
+    void truncatedRecordIsLeftOut() throws IOException {
+        startAndStop();
+        // A crash part way through writing the next record
+        Files.write(ledgerFile(), "2026-01-01 10:00:00\tSTA".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            List<ProcessingLedger.Run> unfinished = ledger.getUnfinished();
+            assertEquals(1, unfinished.size());
+            assertEquals(1, unfinished.get(0).getAttempts());
+        }
+    }
+
+    @Test
+    void runIsNotCarriedOnWithOnceItHasStoppedTooOften() throws IOException {
+        for (int i = 1; i < ProcessingLedger.MAX_ATTEMPTS; i++) {
+            startAndStop();
+        }
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            assertEquals(1, ledger.getUnfinished().size());
+        }
+        startAndStop();
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            assertTrue(ledger.getUnfinished().isEmpty());
+        }
+    }
+
+    @Test
+    void failedRunIsNotCarriedOnWith() throws IOException {
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ProcessingLedger.Run run = ledger.start(List.of(orderFile()), List.of(HASH));
+            ledger.failed(run, "Not a\tClick & Drop order");
+        }
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            assertTrue(ledger.getUnfinished().isEmpty());
+            assertNull(ledger.findFinished(HASH));
+        }
+    }
+
+    @Test
+    void failedRunStartsCountingAgainWhenStarted() throws IOException {
+        startAndStop();
+        startAndStop();
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ProcessingLedger.Run run = ledger.start(List.of(orderFile()), List.of(HASH));
+            ledger.failed(run, "error");
+        }
+        startAndStop();
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            List<ProcessingLedger.Run> unfinished = ledger.getUnfinished();
+            assertEquals(1, unfinished.size());
+            assertNull(unfinished.get(0).getFailed());
+            assertEquals(1, unfinished.get(0).getAttempts());
+        }
+    }
+
+    @Test
+    void runIsInProgressUntilItFinishes() throws IOException {
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ProcessingLedger.Run run = ledger.start(List.of(orderFile()), List.of(HASH));
+            assertSame(run, ledger.findInProgress(HASH));
+            // A run in progress is not unfinished, or it would be started a second time
+            assertTrue(ledger.getUnfinished().isEmpty());
+            ledger.finished(run);
+            assertNull(ledger.findInProgress(HASH));
+        }
+    }
+
+    @Test
+    void sameFilesProcessedAgainStartANewRun() throws IOException {
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            ProcessingLedger.Run run = ledger.start(List.of(orderFile()), List.of(HASH));
+            ledger.finished(run);
+            ledger.start(List.of(orderFile()), List.of(HASH));
+        }
+        try (ProcessingLedger ledger = ProcessingLedger.open(ledgerFile())) {
+            assertNull(ledger.findFinished(HASH));
+            assertEquals(1, ledger.getUnfinished().size());
+        }
+    }
+
+    @Test
+    void hashIsOfTheContent() throws IOException {
+        Path first = Files.write(folder.resolve("order-1.pdf"), "same".getBytes(StandardCharsets.UTF_8));
+        Path second = Files.write(folder.resolve("order (1).pdf"), "same".getBytes(StandardCharsets.UTF_8));
+        Path other = Files.write(folder.resolve("order-2.pdf"), "different".getBytes(StandardCharsets.UTF_8));
+        assertEquals(ProcessingLedger.hash(first.toFile()), ProcessingLedger.hash(second.toFile()));
+        assertNotEquals(ProcessingLedger.hash(first.toFile()), ProcessingLedger.hash(other.toFile()));
+    }
+}
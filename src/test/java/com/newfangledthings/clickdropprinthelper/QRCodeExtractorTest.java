@@ -0,0 +1,97 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QRCodeExtractorTest {
+    private static final Rectangle REGION = new Rectangle(70, 450, 280, 280);
+
+    // Blocks of colour with noise, so every png filter gets used when it is encoded
+    private static BufferedImage createImage(int type) {
+        BufferedImage image = new BufferedImage(1050, 800, type);
+        WritableRaster raster = image.getRaster();
+        Random random = new Random(1);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int band = 0; band < raster.getNumBands(); band++) {
+                    int block = ((x / 35) + (y / 35)) % 2 == 0 ? 0x20 : 0xc0 + band * 0x10;
+                    raster.setSample(x, y, band, block ^ random.nextInt(8) ^ (y % 3 == 0 ? x & 0xff : 0));
+                }
+            }
+        }
+        return image;
+    }
+
+    // The crop has to look the same as that part of the whole image decoded by PDFBox, and stay the same
+    // once it is encoded again in the proof of postage
+    private static void assertCropped(BufferedImage source) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject image = LosslessFactory.createFromImage(document, source);
+            QRCodeExtractor.LabelImage labelImage = QRCodeExtractor.LabelImage.read(image);
+            assertNotNull(labelImage);
+            BufferedImage crop = labelImage.crop(REGION);
+            int[] expected = rgb(image.getImage().getSubimage(REGION.x, REGION.y, REGION.width, REGION.height));
+            assertArrayEquals(expected, rgb(crop));
+            assertArrayEquals(expected, rgb(LosslessFactory.createFromImage(document, crop).getImage()));
+        }
+    }
+
+    private static int[] rgb(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    // PDFBox writes RGB images with the png predictor
+    @Test
+    void croppedRgbMatchesTheWholeImage() throws IOException {
+        assertCropped(createImage(BufferedImage.TYPE_3BYTE_BGR));
+    }
+
+    // and grey images without it
+    @Test
+    void croppedGreyMatchesTheWholeImage() throws IOException {
+        assertCropped(createImage(BufferedImage.TYPE_BYTE_GRAY));
+    }
+
+    @Test
+    void jpegIsLeftToPdfBox() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject jpeg = JPEGFactory.createFromImage(document, createImage(BufferedImage.TYPE_3BYTE_BGR));
+            assertNull(QRCodeExtractor.LabelImage.read(jpeg));
+        }
+    }
+
+    @Test
+    void imageTooSmallForTheQRCodeIsAnError() {
+        QRCodeExtractor.LabelImage labelImage = new QRCodeExtractor.LabelImage(new byte[0], 1050, 600, 3, true);
+        assertThrows(IOException.class, () -> labelImage.crop(REGION));
+    }
+
+    @Test
+    void unknownPngFilterIsAnError() {
+        byte[] encoded = {5, 1, 2, 3};
+        assertThrows(IOException.class, () -> QRCodeExtractor.LabelImage.unfilter(encoded, new byte[3], new byte[3], 3));
+    }
+
+    @Test
+    void paethFilterPicksTheClosestNeighbour() throws IOException {
+        byte[] previous = {10, 20, 30, 40};
+        byte[] row = new byte[4];
+        QRCodeExtractor.LabelImage.unfilter(new byte[]{4, 1, 1, 1, 1}, previous, row, 1);
+        // Up for the first byte, then the one to the left is closest to left + up - up left
+        assertArrayEquals(new byte[]{11, 21, 31, 41}, row);
+    }
+}
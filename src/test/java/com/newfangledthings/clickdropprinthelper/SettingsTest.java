@@ -0,0 +1,156 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SettingsTest {
+
+    private static Properties properties(String... keysAndValues) {
+        Properties properties = new Properties();
+        properties.setProperty("WatchFolder", "downloads");
+        properties.setProperty("StoreFolder", "store");
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+
+    private static Settings parseMain(Properties properties) {
+        return Settings.parse(properties, "config.properties").get(Settings.MAIN_PROFILE);
+    }
+
+    private static String parseError(Properties properties) {
+        return assertThrows(IllegalArgumentException.class, () -> Settings.parse(properties, "config.properties")).getMessage();
+    }
+
+    @Test
+    void blankSettingsUseTheirDefaults() {
+        Settings settings = parseMain(properties());
+        assertTrue(settings.isCreateProofOfPostage());
+        assertTrue(settings.isSkipDuplicates());
+        assertEquals(2, settings.getProcessingThreads());
+        assertEquals(0, settings.getViewerTimeout());
+        assertEquals(Settings.BeforeRun.RUN, settings.getBeforeRun());
+        assertEquals(LabelImposer.Layout.ORIGINAL, settings.getLabelLayout());
+        assertNull(settings.getMaxMainMemoryMB());
+        assertFalse(settings.hasPrintCommand());
+    }
+
+    @Test
+    void settingsAreRead() {
+        Settings settings = parseMain(properties(
+                "CreateQRs", "No",
+                "ProcessingThreads", " 4 ",
+                "BeforeRun", "prompt",
+                "LabelLayout", "4-up",
+                "MaxMainMemoryMB", "0",
+                "PrinterLabels", " Label Printer ",
+                "ViewerExecutePrintLabels", "viewer /p \"%filename%\""));
+        assertFalse(settings.isCreateQRs());
+        assertEquals(4, settings.getProcessingThreads());
+        assertEquals(Settings.BeforeRun.PROMPT, settings.getBeforeRun());
+        assertEquals(LabelImposer.Layout.FOUR_UP, settings.getLabelLayout());
+        // 0 is a scratch file only, which is different from blank
+        assertEquals(0L, settings.getMaxMainMemoryMB());
+        assertEquals("Label Printer", settings.getPrinter(OutputType.LABELS));
+        assertEquals("", settings.getPrinter(OutputType.PACKING_SLIPS));
+        assertTrue(settings.hasPrintCommand());
+    }
+
+    @Test
+    void everyErrorIsReportedTogether() {
+        String error = parseError(properties(
+                "StoreFolder", " ",
+                "CreateLabels", "maybe",
+                "ProcessingThreads", "0",
+                "ViewerDelay", "soon",
+                "BeforeRun", "later",
+                "LabelLayout", "3-up"));
+        assertTrue(error.startsWith("Invalid settings in config.properties: "), error);
+        assertTrue(error.contains("StoreFolder must be set"), error);
+        assertTrue(error.contains("CreateLabels must be yes or no, not 'maybe'"), error);
+        assertTrue(error.contains("ProcessingThreads must be a whole number of at least 1, not '0'"), error);
+        assertTrue(error.contains("ViewerDelay must be a whole number of at least 0, not 'soon'"), error);
+        assertTrue(error.contains("BeforeRun must be stop, prompt, run or blank, not 'later'"), error);
+        assertTrue(error.contains("Unknown LabelLayout '3-up'"), error);
+    }
+
+    @Test
+    void restartChangesAreListed() {
+        Settings previous = parseMain(properties("ProcessingThreads", "2", "BatchWindow", "0"));
+        Settings current = parseMain(properties("ProcessingThreads", "3", "BatchWindow", "10", "WatchFolder", "other"));
+        assertEquals(List.of("WatchFolder", "ProcessingThreads"), current.getRestartChanges(previous));
+    }
+
+    @Test
+    void mainProfileComesFirst() {
+        Map<String, Settings> profiles = Settings.parse(properties(), "config.properties");
+        assertEquals(List.of(Settings.MAIN_PROFILE), List.copyOf(profiles.keySet()));
+        assertEquals("the main profile", profiles.get(Settings.MAIN_PROFILE).getProfileName());
+    }
+
+    @Test
+    void profileSettingsFallBackToTheMainSettings() {
+        Map<String, Settings> profiles = Settings.parse(properties(
+                "Profiles", "ebay, etsy",
+                "CreateLabels", "no",
+                "ebay.WatchFolder", "ebay-downloads",
+                "ebay.CreateLabels", "yes",
+                "etsy.WatchFolder", "etsy-downloads",
+                "etsy.StoreFolder", "etsy-store"), "config.properties");
+        assertEquals(List.of(Settings.MAIN_PROFILE, "ebay", "etsy"), List.copyOf(profiles.keySet()));
+        Settings ebay = profiles.get("ebay");
+        assertEquals("profile ebay", ebay.getProfileName());
+        assertEquals("ebay-downloads", ebay.getWatchFolder());
+        assertEquals("store", ebay.getStoreFolder());
+        assertTrue(ebay.isCreateLabels());
+        Settings etsy = profiles.get("etsy");
+        assertEquals("etsy-store", etsy.getStoreFolder());
+        assertFalse(etsy.isCreateLabels());
+    }
+
+    @Test
+    void profileErrorsNameTheProfileSetting() {
+        String error = parseError(properties(
+                "Profiles", "ebay",
+                "ebay.WatchFolder", "ebay-downloads",
+                "ebay.CreateLabels", "maybe"));
+        assertTrue(error.contains("ebay.CreateLabels must be yes or no, not 'maybe'"), error);
+    }
+
+    @Test
+    void badMainSettingIsOnlyReportedOnce() {
+        String error = parseError(properties(
+                "Profiles", "ebay,etsy",
+                "ebay.WatchFolder", "ebay-downloads",
+                "etsy.WatchFolder", "etsy-downloads",
+                "ViewerThreads", "none"));
+        assertEquals(error.indexOf("ViewerThreads"), error.lastIndexOf("ViewerThreads"), error);
+    }
+
+    @Test
+    void badProfileNamesAreReported() {
+        String error = parseError(properties(
+                "Profiles", "e bay,etsy,etsy",
+                "etsy.WatchFolder", "etsy-downloads"));
+        assertTrue(error.contains("Profile name 'e bay' can only have letters, numbers, - and _"), error);
+        assertTrue(error.contains("Profile etsy is in Profiles more than once"), error);
+    }
+
+    @Test
+    void profilesCannotWatchTheSameFolder() {
+        String error = parseError(properties(
+                "Profiles", "ebay",
+                "ebay.WatchFolder", "./downloads"));
+        assertTrue(error.contains("profile ebay watches the same folder as the main profile, set ebay.WatchFolder"), error);
+    }
+}
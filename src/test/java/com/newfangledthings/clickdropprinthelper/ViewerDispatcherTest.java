@@ -0,0 +1,31 @@
+package com.newfangledthings.clickdropprinthelper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ViewerDispatcherTest {
+
+    @Test
+    void quotedArgumentsStayTogether() {
+        assertEquals(List.of("C:/Program Files/Adobe/Acrobat.exe", "/t", "C:/store/labels 1.pdf", "Paper Printer"),
+                ViewerDispatcher.splitArguments("\"C:/Program Files/Adobe/Acrobat.exe\" /t \"C:/store/labels 1.pdf\" \"Paper Printer\""));
+    }
+
+    @Test
+    void extraSpacesAreIgnored() {
+        assertEquals(List.of("viewer", "-p", "file.pdf"), ViewerDispatcher.splitArguments("  viewer   -p\tfile.pdf  "));
+    }
+
+    @Test
+    void emptyQuotesAreAnEmptyArgument() {
+        assertEquals(List.of("viewer", "", "file.pdf"), ViewerDispatcher.splitArguments("viewer \"\" file.pdf"));
+    }
+
+    @Test
+    void quotesInsideAnArgumentAreRemoved() {
+        assertEquals(List.of("--printer=Paper Printer"), ViewerDispatcher.splitArguments("--printer=\"Paper Printer\""));
+    }
+}